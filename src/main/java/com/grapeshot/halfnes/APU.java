@@ -25,9 +25,15 @@ public class APU {
     CPURAM cpuram;
     public int sprdma_count;
     private int apucycle = 0, remainder = 0;
+    //first cpu cycle the APU has to be run up to because it could fire an IRQ
+    //or steal cycles for a DMC fetch by then. Between events the APU lags behind.
+    private int nextevent = 0;
     private int[] noiseperiod;
-    // different for PAL
-    private long accum = 0;
+    //band limited output for soundFiltering: the cycle the timers have
+    //been run up to, and the level last put in the buffer
+    private BlipBuffer blip;
+    private int[] blipsamples;
+    private int blipcycle = 0, bliplevel = 0;
     private final ArrayList<ExpansionSoundChip> expnSound = new ArrayList<>();
     private boolean soundFiltering;
     private final static int[] TNDLOOKUP = initTndLookup(), SQUARELOOKUP = initSquareLookup();
@@ -102,15 +108,16 @@ public class APU {
 
     private void setupAudioInterface(){
         Mapper.TVType tvtype = cpuram.mapper.getTVType();
-        soundFiltering = PrefsSingleton.get().getBoolean("soundFiltering", true);
-        samplerate = PrefsSingleton.get().getInt("sampleRate", 44100);
+        final EmulatorConfig config = nes.getConfig();
+        soundFiltering = config.isSoundFiltering();
+        samplerate = config.getSampleRate();
         if (ai != null) {
             ai.destroy();
         }
         ai = nes.getAudioOutInterface();
         ai = ai == null ? new SwingAudioImpl(nes, samplerate, tvtype) : ai;
         LOG.info("Using audio interface: {}", ai);
-        if (PrefsSingleton.get().getBoolean("showScope", false)) {
+        if (config.isShowScope()) {
             ai = new Oscilloscope(ai);
         }
     }
@@ -144,6 +151,11 @@ public class APU {
                 cyclesperframe = 33252;
                 break;
         }
+        //room for a frame that runs long
+        blip = new BlipBuffer(cyclespersample, cyclesperframe * 2);
+        blipsamples = new int[blip.maxSamples()];
+        blipcycle = apucycle;
+        bliplevel = 0;
 //        ai = new Reverberator(ai, 2,0.7,0.8,0.99);
 //        ai = new Reverberator(ai, 243,0.5,0.7,0.99);
 //       ai = new Reverberator(ai, 4001,0.3,0.5,0.99);
@@ -154,6 +166,41 @@ public class APU {
         return ai.bufferHasLessThan(samples);
     }
 
+    public double bufferFill() {
+        return ai.bufferFill();
+    }
+
+    /**
+     * Called by the CPU every cycle. Only runs the APU when it is due to do
+     * something the CPU could notice, otherwise it catches up on the next
+     * register access or at the end of the frame.
+     *
+     * @param cpucycle current CPU cycle
+     */
+    public final void sync(final int cpucycle) {
+        if (cpucycle >= nextevent) {
+            updateto(cpucycle);
+        }
+    }
+
+    private void schedule() {
+        if (!expnSound.isEmpty()) {
+            //expansion chips have registers the CPU can read back, keep them in step
+            nextevent = apucycle + 1;
+            return;
+        }
+        //frame counter is clocked on the cycle its divider runs out
+        int event = apucycle + Math.max(framectrdiv - 1, 0);
+        if (dmcsamplesleft > 0) {
+            //a DMC fetch comes the cycle after the sample buffer empties,
+            //which is at the soonest the next time the rate counter wraps
+            event = Math.min(event, (dmcBufferEmpty || dmcpos >= dmcrate)
+                    ? apucycle : apucycle + dmcrate - dmcpos);
+        }
+        //updateto(c) runs cycles up to c - 1
+        nextevent = event + 1;
+    }
+
     public final int read(final int addr) {
         updateto((int) cpu.clocks);
         switch (addr) {
@@ -213,6 +260,9 @@ public class APU {
         //This is how values written to any of the APU's memory
         //mapped registers change the state of the system.
         updateto((int) cpu.clocks - 1);
+        if (soundFiltering) {
+            mixTo(apucycle);
+        }
         //System.err.println("Wrote " + utils.hex(data) + " to " + utils.hex(reg) + " @ cycle " + cpu.cycles);
         switch (reg) {
             case 0x0:
@@ -409,44 +459,45 @@ public class APU {
             default:
                 break;
         }
+        if (soundFiltering) {
+            mixTo(apucycle);
+        }
+        schedule();
     }
 
     public final void updateto(final int cpucycle) {
         //still have to run this even if sound is disabled, some games rely on DMC IRQ etc.
         if (soundFiltering) {
-            //linear sampling code
-            //should really be a FIR filter + decimator instead
-            //but I don't have the DSP experience to design something like that
-            //that would be fast enough to work / not require calculating every sample
-            //this works well enough at eliminating aliasing anyway.
+            //band limited synthesis: the channel timers only run when
+            //something could change their output (see mixTo), so all this
+            //has to do every cycle is the frame counter and the DMC, and it
+            //skips ahead to the next cycle either of them does anything
             while (apucycle < cpucycle) {
-                ++remainder;
+                int skip = Math.min(cpucycle - apucycle,
+                        Math.min(framectrdiv - 1, dmcrate - 1 - dmcpos));
+                if (dmcBufferEmpty && dmcsamplesleft > 0) {
+                    skip = 0;
+                }
+                if (skip > 0) {
+                    framectrdiv -= skip;
+                    dmcpos += skip;
+                    apucycle += skip;
+                    continue;
+                }
+                mixTo(apucycle);
                 clockdmc();
                 if (--framectrdiv <= 0) {
                     framectrdiv = framectrreload;
                     clockframecounter();
                 }
-                timers[0].clock();
-                timers[1].clock();
-                if (lengthctr[2] > 0 && linearctr > 0) {
-                    timers[2].clock();
-                }
-                timers[3].clock();
-                if (!expnSound.isEmpty()) {
-                    for (ExpansionSoundChip c : expnSound) {
-                        c.clock(1);
-                    }
-                }
-                accum += getOutputLevel();
-
-                if ((apucycle % cyclespersample) < 1) {
-                    //not quite right - there's a non-integer # cycles per sample.
-                    ai.outputSample(lowpass_filter(highpass_filter((int) (accum / remainder))));
-                    remainder = 0;
-                    accum = 0;
-                }
+                mixTo(apucycle);
                 ++apucycle;
             }
+            if (!expnSound.isEmpty()) {
+                //mappers write to the expansion chips directly, so they have
+                //to be up to date all the time
+                mixTo(apucycle);
+            }
         } else {
             //point sampling code
             while (apucycle < cpucycle) {
@@ -476,6 +527,53 @@ public class APU {
                 ++apucycle;
             }
         }
+        schedule();
+    }
+
+    private void mixTo(final int cycle) {
+        //runs the timers up to the cycle, stopping whenever one of the ones
+        //that can be heard moves, and puts every change of the mixed level
+        //into the blip buffer. Anything else that changes the level has to
+        //call this before and after, so the change lands on the right cycle.
+        final boolean triangle = lengthctr[2] > 0 && linearctr > 0;
+        while (blipcycle < cycle) {
+            int step = cycle - blipcycle;
+            if (volume[0] != 0) {
+                step = Math.min(step, timers[0].cyclesToStep());
+            }
+            if (volume[1] != 0) {
+                step = Math.min(step, timers[1].cyclesToStep());
+            }
+            if (triangle) {
+                step = Math.min(step, timers[2].cyclesToStep());
+            }
+            if (volume[3] != 0) {
+                step = Math.min(step, timers[3].cyclesToStep());
+            }
+            timers[0].advance(step);
+            timers[1].advance(step);
+            if (triangle) {
+                timers[2].advance(step);
+            }
+            timers[3].advance(step);
+            if (!expnSound.isEmpty()) {
+                for (ExpansionSoundChip c : expnSound) {
+                    c.clock(step);
+                }
+            }
+            blipcycle += step;
+            //a timer moving on a cycle is heard from that cycle on
+            mixLevel(blipcycle - 1);
+        }
+        mixLevel(cycle);
+    }
+
+    private void mixLevel(final int cycle) {
+        final int level = getOutputLevel();
+        if (level != bliplevel) {
+            blip.addDelta(cycle, level - bliplevel);
+            bliplevel = level;
+        }
     }
 
     private int getOutputLevel() {
@@ -508,7 +606,16 @@ public class APU {
 
     public final void finishframe() {
         updateto(cyclesperframe);
+        if (soundFiltering) {
+            mixTo(apucycle);
+            final int count = blip.endFrame(apucycle, blipsamples);
+            for (int i = 0; i < count; ++i) {
+                ai.outputSample(lowpass_filter(highpass_filter(blipsamples[i])));
+            }
+            blipcycle = 0;
+        }
         apucycle = 0;
+        schedule();
         ai.flushFrame(nes.isFrameLimiterOn());
     }
 
@@ -44,6 +44,16 @@ public final class CPU {
 
         ONCARRY, ALWAYS; //type of dummy read
     }
+
+    //Table driven core: one small handler per opcode instead of the big switch,
+    //so the JIT can compile each instruction on its own and the dispatch is
+    //a single array load. The switch stays as the reference implementation.
+    private interface Op {
+
+        void exec();
+    }
+    private final Op[] ops = opTable();
+    private boolean tableDispatch = false;
     OutputStreamWriter w; //debug log writer
 
     public CPU(final CPURAM cpuram) {
@@ -72,6 +82,14 @@ public final class CPU {
         }
     }
 
+    public void setTableDispatch(final boolean on) {
+        tableDispatch = on;
+    }
+
+    public boolean isTableDispatch() {
+        return tableDispatch;
+    }
+
     public void stopLog() {
         logging = false;
         flushLog();
@@ -132,8 +150,8 @@ public final class CPU {
         log("**STEAL " + cyclestosteal + "**");
     }
 
-    public final void runcycle(final int scanline, final int pixel) {
-        ram.read(0x4000); //attempt to sync the APU every cycle and make dmc irqs work properly, which they still don't. Feh.
+    public final void runcycle() {
+        ram.apu.sync(clocks); //apu only runs when it's due to fire an irq or fetch a dmc sample
         ++clocks;
 
         //guard against overflows
@@ -172,6 +190,13 @@ public final class CPU {
         
         //now we're at the start of a new instruction
 
+        //let the ppu catch up first if it could have changed the nmi or irq lines
+        if (logging) {
+            ram.ppu.catchUp();
+        } else {
+            ram.ppu.sync(clocks);
+        }
+
         //handle nmi requests (NMI line is edge sensitive not level sensitive)
         if (nmiNext) {
             nmi();
@@ -221,12 +246,22 @@ public final class CPU {
                     PC + (byte) (ram.read(PC)) + 1);
             log(utils.hex(PC - 1) + " " + utils.hex(instr)
                     + String.format(" %-14s ", op)
-                    + status() + " CYC:" + pixel + " SL:" + scanline + "\n");
+                    + status() + " CYC:" + ram.ppu.cycles + " SL:" + ram.ppu.scanline + "\n");
         }
         if (cycles == 0) {
             flushLog();
         }
 
+        if (tableDispatch) {
+            ops[instr].exec();
+        } else {
+            execute(instr);
+        }
+        pb = 0;
+        PC &= 0xffff;
+    }
+
+    private void execute(final int instr) {
         switch (instr) {
             // ADC
             case 0x69:
@@ -1243,10 +1278,1027 @@ public final class CPU {
                         + utils.hex(PC - 1));
                 break;
         }
-        pb = 0;
-        PC &= 0xffff;
     }
 
+    private Op[] opTable() {
+        //one pre-bound handler per opcode, each doing the addressing mode,
+        //the operation and the base cycle count of the matching case in execute()
+        final Op[] ops = new Op[0x100];
+        // ADC
+        ops[0x69] = () -> {
+            adc(imm());
+            cycles += 2;
+        };
+        ops[0x65] = () -> {
+            adc(zpg());
+            cycles += 3;
+        };
+        ops[0x75] = () -> {
+            adc(zpg(X));
+            cycles += 4;
+        };
+        ops[0x6d] = () -> {
+            adc(abs());
+            cycles += 4;
+        };
+        ops[0x7d] = () -> {
+            adc(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x79] = () -> {
+            adc(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x61] = () -> {
+            adc(indX());
+            cycles += 6;
+        };
+        ops[0x71] = () -> {
+            adc(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // AHX (unofficial)
+        ops[0x93] = () -> {
+            ahx(indY(dummy.ALWAYS));
+            cycles += 6;
+        };
+        ops[0x9f] = () -> {
+            ahx(abs(Y, dummy.ALWAYS));
+            cycles += 5;
+        };
+        // ALR (unofficial)
+        ops[0x4b] = () -> {
+            alr(imm());
+            cycles += 2;
+        };
+        // ANC (unofficial)
+        ops[0x0b] = () -> {
+            anc(imm());
+            cycles += 2;
+        };
+        ops[0x2b] = () -> {
+            anc(imm());
+            cycles += 2;
+        };
+        // AND
+        ops[0x29] = () -> {
+            and(imm());
+            cycles += 2;
+        };
+        ops[0x25] = () -> {
+            and(zpg());
+            cycles += 3;
+        };
+        ops[0x35] = () -> {
+            and(zpg(X));
+            cycles += 4;
+        };
+        ops[0x2d] = () -> {
+            and(abs());
+            cycles += 4;
+        };
+        ops[0x3d] = () -> {
+            and(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x39] = () -> {
+            and(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x21] = () -> {
+            and(indX());
+            cycles += 6;
+        };
+        ops[0x31] = () -> {
+            and(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // ARR (unofficial)
+        ops[0x6b] = () -> {
+            arr(imm());
+            cycles += 2;
+        };
+        // ASL
+        ops[0x0a] = () -> {
+            aslA();
+            cycles += 2;
+        };
+        ops[0x06] = () -> {
+            asl(zpg());
+            cycles += 5;
+        };
+        ops[0x16] = () -> {
+            asl(zpg(X));
+            cycles += 6;
+        };
+        ops[0x0e] = () -> {
+            asl(abs());
+            cycles += 6;
+        };
+        ops[0x1e] = () -> {
+            asl(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // AXS (unofficial)
+        ops[0xcb] = () -> {
+            axs(imm());
+            cycles += 2;
+        };
+        // BIT
+        ops[0x24] = () -> {
+            bit(zpg());
+            cycles += 3;
+        };
+        ops[0x2c] = () -> {
+            bit(abs());
+            cycles += 4;
+        };
+        // Branches: every branch uses rel. addressing
+        ops[0x10] = () -> {
+            branch(!negativeFlag);
+            cycles += 2 + pb;
+        };
+        ops[0x30] = () -> {
+            branch(negativeFlag);
+            cycles += 2 + pb;
+        };
+        ops[0x50] = () -> {
+            branch(!overflowFlag);
+            cycles += 2 + pb;
+        };
+        ops[0x70] = () -> {
+            branch(overflowFlag);
+            cycles += 2 + pb;
+        };
+        ops[0x90] = () -> {
+            branch(!carryFlag);
+            cycles += 2 + pb;
+        };
+        ops[0xb0] = () -> {
+            branch(carryFlag);
+            cycles += 2 + pb;
+        };
+        ops[0xd0] = () -> {
+            branch(!zeroFlag);
+            cycles += 2 + pb;
+        };
+        ops[0xf0] = () -> {
+            branch(zeroFlag);
+            cycles += 2 + pb;
+        };
+        // BRK
+        ops[0x00] = () -> {
+            //System.err.println("Hey! A break!");
+            breakinterrupt();
+            cycles += 7;
+        };
+        // CMP
+        ops[0xc9] = () -> {
+            cmp(A, imm());
+            cycles += 2;
+        };
+        ops[0xc5] = () -> {
+            cmp(A, zpg());
+            cycles += 3;
+        };
+        ops[0xd5] = () -> {
+            cmp(A, zpg(X));
+            cycles += 4;
+        };
+        ops[0xcd] = () -> {
+            cmp(A, abs());
+            cycles += 4;
+        };
+        ops[0xdd] = () -> {
+            cmp(A, abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0xd9] = () -> {
+            cmp(A, abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0xc1] = () -> {
+            cmp(A, indX());
+            cycles += 6;
+        };
+        ops[0xd1] = () -> {
+            cmp(A, indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // CPX
+        ops[0xe0] = () -> {
+            cmp(X, imm());
+            cycles += 2;
+        };
+        ops[0xe4] = () -> {
+            cmp(X, zpg());
+            cycles += 3;
+        };
+        ops[0xec] = () -> {
+            cmp(X, abs());
+            cycles += 4;
+        };
+        // CPY
+        ops[0xc0] = () -> {
+            cmp(Y, imm());
+            cycles += 2;
+        };
+        ops[0xc4] = () -> {
+            cmp(Y, zpg());
+            cycles += 3;
+        };
+        ops[0xcc] = () -> {
+            cmp(Y, abs());
+            cycles += 4;
+        };
+        // DEC
+        ops[0xc6] = () -> {
+            dec(zpg());
+            cycles += 5;
+        };
+        ops[0xd6] = () -> {
+            dec(zpg(X));
+            cycles += 6;
+        };
+        ops[0xce] = () -> {
+            dec(abs());
+            cycles += 6;
+        };
+        ops[0xde] = () -> {
+            dec(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // DCP (unofficial)
+        ops[0xc3] = () -> {
+            dcp(A, indX());
+            cycles += 8;
+        };
+        ops[0xd3] = () -> {
+            dcp(A, indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0xc7] = () -> {
+            dcp(A, zpg());
+            cycles += 5;
+        };
+        ops[0xd7] = () -> {
+            dcp(A, zpg(X));
+            cycles += 6;
+        };
+        ops[0xdb] = () -> {
+            dcp(A, abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0xcf] = () -> {
+            dcp(A, abs());
+            cycles += 6;
+        };
+        ops[0xdf] = () -> {
+            dcp(A, abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // EOR
+        ops[0x49] = () -> {
+            eor(imm());
+            cycles += 2;
+        };
+        ops[0x45] = () -> {
+            eor(zpg());
+            cycles += 3;
+        };
+        ops[0x55] = () -> {
+            eor(zpg(X));
+            cycles += 4;
+        };
+        ops[0x4d] = () -> {
+            eor(abs());
+            cycles += 4;
+        };
+        ops[0x5d] = () -> {
+            eor(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x59] = () -> {
+            eor(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x41] = () -> {
+            eor(indX());
+            cycles += 6;
+        };
+        ops[0x51] = () -> {
+            eor(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // Flag set/clear
+        ops[0x18] = () -> {
+            carryFlag = false;
+            cycles += 2;
+        };
+        ops[0x38] = () -> {
+            carryFlag = true;
+            cycles += 2;
+        };
+        ops[0x58] = () -> {
+            //cli
+            //interrupts shouldn't fire for 1 cycle after cli
+            delayInterrupt();
+            interruptsDisabled = false;
+            cycles += 2;
+        };
+        ops[0x78] = () -> {
+            //sei
+            delayInterrupt();
+            interruptsDisabled = true;
+            cycles += 2;
+        };
+        ops[0xb8] = () -> {
+            overflowFlag = false;
+            cycles += 2;
+        };
+        ops[0xd8] = () -> {
+            decimalModeFlag = false;
+            cycles += 2;
+            // decimal mode doesnt
+        };
+        ops[0xf8] = () -> {
+            decimalModeFlag = true;
+            cycles += 2;
+            // do anything on NES
+        };
+        // INC
+        ops[0xe6] = () -> {
+            inc(zpg());
+            cycles += 5;
+        };
+        ops[0xf6] = () -> {
+            inc(zpg(X));
+            cycles += 6;
+        };
+        ops[0xee] = () -> {
+            inc(abs());
+            cycles += 6;
+        };
+        ops[0xfe] = () -> {
+            inc(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // ISC (unofficial)
+        ops[0xe3] = () -> {
+            isc(indX());
+            cycles += 8;
+        };
+        ops[0xf3] = () -> {
+            isc(indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0xe7] = () -> {
+            isc(zpg());
+            cycles += 5;
+        };
+        ops[0xf7] = () -> {
+            isc(zpg(X));
+            cycles += 6;
+        };
+        ops[0xfb] = () -> {
+            isc(abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0xef] = () -> {
+            isc(abs());
+            cycles += 6;
+        };
+        ops[0xff] = () -> {
+            isc(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // JMP
+        ops[0x4c] = () -> {
+            int tempe = PC;
+            PC = abs();
+            if (PC == (tempe - 1)) {
+            idle = true;
+            }
+            cycles += 3;
+        };
+        ops[0x6c] = () -> {
+            int tempf = PC;
+            PC = ind();
+            if (PC == (tempf - 1)) {
+            idle = true;
+            }
+            cycles += 5;
+        };
+        // JSR
+        ops[0x20] = () -> {
+            jsr(abs());
+            cycles += 6;
+        };
+        // KIL (unofficial)
+        ops[0x02] = () -> {
+            System.err.println("KIL - CPU locked");
+            flushLog();
+            ram.apu.nes.runEmulation = false;
+        };
+        ops[0x12] = ops[0x02];
+        ops[0x22] = ops[0x02];
+        ops[0x32] = ops[0x02];
+        ops[0x42] = ops[0x02];
+        ops[0x52] = ops[0x02];
+        ops[0x62] = ops[0x02];
+        ops[0x72] = ops[0x02];
+        ops[0x92] = ops[0x02];
+        ops[0xb2] = ops[0x02];
+        ops[0xd2] = ops[0x02];
+        ops[0xf2] = ops[0x02];
+        // LAS (unofficial)
+        ops[0xbb] = () -> {
+            las(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        // LAX (unofficial)
+        ops[0xa3] = () -> {
+            lax(indX());
+            cycles += 6;
+        };
+        ops[0xb3] = () -> {
+            lax(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        ops[0xa7] = () -> {
+            lax(zpg());
+            cycles += 3;
+        };
+        ops[0xb7] = () -> {
+            lax(zpg(Y));
+            cycles += 4;
+        };
+        ops[0xab] = () -> {
+            lax(imm());
+            cycles += 2;
+        };
+        ops[0xaf] = () -> {
+            lax(abs());
+            cycles += 4;
+        };
+        ops[0xbf] = () -> {
+            lax(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        // LDA
+        ops[0xa9] = () -> {
+            lda(imm());
+            cycles += 2;
+        };
+        ops[0xa5] = () -> {
+            lda(zpg());
+            cycles += 3;
+        };
+        ops[0xb5] = () -> {
+            lda(zpg(X));
+            cycles += 4;
+        };
+        ops[0xad] = () -> {
+            lda(abs());
+            cycles += 4;
+        };
+        ops[0xbd] = () -> {
+            lda(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0xb9] = () -> {
+            lda(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0xa1] = () -> {
+            lda(indX());
+            cycles += 6;
+        };
+        ops[0xb1] = () -> {
+            lda(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // LDX
+        ops[0xa2] = () -> {
+            ldx(imm());
+            cycles += 2;
+        };
+        ops[0xa6] = () -> {
+            ldx(zpg());
+            cycles += 3;
+        };
+        ops[0xb6] = () -> {
+            ldx(zpg(Y));
+            cycles += 4;
+        };
+        ops[0xae] = () -> {
+            ldx(abs());
+            cycles += 4;
+        };
+        ops[0xbe] = () -> {
+            ldx(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        // LDY
+        ops[0xa0] = () -> {
+            ldy(imm());
+            cycles += 2;
+        };
+        ops[0xa4] = () -> {
+            ldy(zpg());
+            cycles += 3;
+        };
+        ops[0xb4] = () -> {
+            ldy(zpg(X));
+            cycles += 4;
+        };
+        ops[0xac] = () -> {
+            ldy(abs());
+            cycles += 4;
+        };
+        ops[0xbc] = () -> {
+            ldy(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        // LSR
+        ops[0x4a] = () -> {
+            lsrA();
+            cycles += 2;
+        };
+        ops[0x46] = () -> {
+            lsr(zpg());
+            cycles += 5;
+        };
+        ops[0x56] = () -> {
+            lsr(zpg(X));
+            cycles += 6;
+        };
+        ops[0x4e] = () -> {
+            lsr(abs());
+            cycles += 6;
+        };
+        ops[0x5e] = () -> {
+            lsr(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // NOP
+        ops[0x1a] = () -> {
+            cycles += 2;
+        };
+        ops[0x3a] = ops[0x1a];
+        ops[0x5a] = ops[0x1a];
+        ops[0x7a] = ops[0x1a];
+        ops[0xda] = ops[0x1a];
+        ops[0xea] = ops[0x1a];
+        ops[0xfa] = ops[0x1a];
+        ops[0x80] = () -> {
+            imm();
+            cycles += 2;
+        };
+        ops[0x82] = ops[0x80];
+        ops[0xc2] = ops[0x80];
+        ops[0xe2] = ops[0x80];
+        ops[0x89] = ops[0x80];
+        ops[0x04] = () -> {
+            zpg();
+            cycles += 3;
+        };
+        ops[0x44] = ops[0x04];
+        ops[0x64] = ops[0x04];
+        ops[0x14] = () -> {
+            zpg(X);
+            cycles += 4;
+        };
+        ops[0x34] = ops[0x14];
+        ops[0x54] = ops[0x14];
+        ops[0x74] = ops[0x14];
+        ops[0xd4] = ops[0x14];
+        ops[0xf4] = ops[0x14];
+        ops[0x0c] = () -> {
+            abs();
+            cycles += 4;
+        };
+        ops[0x1c] = () -> {
+            abs(X, dummy.ONCARRY);
+            cycles += 4 + pb;
+        };
+        ops[0x3c] = ops[0x1c];
+        ops[0x5c] = ops[0x1c];
+        ops[0x7c] = ops[0x1c];
+        ops[0xdc] = ops[0x1c];
+        ops[0xfc] = ops[0x1c];
+        // ORA
+        ops[0x09] = () -> {
+            ora(imm());
+            cycles += 2;
+        };
+        ops[0x05] = () -> {
+            ora(zpg());
+            cycles += 3;
+        };
+        ops[0x15] = () -> {
+            ora(zpg(X));
+            cycles += 4;
+        };
+        ops[0x0d] = () -> {
+            ora(abs());
+            cycles += 4;
+        };
+        ops[0x1d] = () -> {
+            ora(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x19] = () -> {
+            ora(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0x01] = () -> {
+            ora(indX());
+            cycles += 6;
+        };
+        ops[0x11] = () -> {
+            ora(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        // Register instrs.
+        ops[0xaa] = () -> {
+            X = A;
+            cycles += 2;
+            setflags(A);
+        };
+        ops[0x8a] = () -> {
+            A = X;
+            cycles += 2;
+            setflags(A);
+        };
+        ops[0xca] = () -> {
+            X--;
+            X &= 0xFF;
+            setflags(X);
+            cycles += 2;
+        };
+        ops[0xe8] = () -> {
+            X++;
+            X &= 0xFF;
+            setflags(X);
+            cycles += 2;
+        };
+        ops[0xa8] = () -> {
+            Y = A;
+            cycles += 2;
+            setflags(A);
+        };
+        ops[0x98] = () -> {
+            A = Y;
+            cycles += 2;
+            setflags(A);
+        };
+        ops[0x88] = () -> {
+            Y--;
+            Y &= 0xFF;
+            setflags(Y);
+            cycles += 2;
+        };
+        ops[0xc8] = () -> {
+            Y++;
+            Y &= 0xFF;
+            setflags(Y);
+            cycles += 2;
+        };
+        // RLA (unofficial)
+        ops[0x23] = () -> {
+            rla(indX());
+            cycles += 8;
+        };
+        ops[0x33] = () -> {
+            rla(indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0x27] = () -> {
+            rla(zpg());
+            cycles += 5;
+        };
+        ops[0x37] = () -> {
+            rla(zpg(X));
+            cycles += 6;
+        };
+        ops[0x3b] = () -> {
+            rla(abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0x2f] = () -> {
+            rla(abs());
+            cycles += 6;
+        };
+        ops[0x3f] = () -> {
+            rla(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // ROL
+        ops[0x2a] = () -> {
+            rolA();
+            cycles += 2;
+        };
+        ops[0x26] = () -> {
+            rol(zpg());
+            cycles += 5;
+        };
+        ops[0x36] = () -> {
+            rol(zpg(X));
+            cycles += 6;
+        };
+        ops[0x2e] = () -> {
+            rol(abs());
+            cycles += 6;
+        };
+        ops[0x3e] = () -> {
+            rol(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // ROR
+        ops[0x6a] = () -> {
+            rorA();
+            cycles += 2;
+        };
+        ops[0x66] = () -> {
+            ror(zpg());
+            cycles += 5;
+        };
+        ops[0x76] = () -> {
+            ror(zpg(X));
+            cycles += 6;
+        };
+        ops[0x6e] = () -> {
+            ror(abs());
+            cycles += 6;
+        };
+        ops[0x7e] = () -> {
+            ror(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // RRA (unofficial)
+        ops[0x63] = () -> {
+            rra(indX());
+            cycles += 8;
+        };
+        ops[0x73] = () -> {
+            rra(indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0x67] = () -> {
+            rra(zpg());
+            cycles += 5;
+        };
+        ops[0x77] = () -> {
+            rra(zpg(X));
+            cycles += 6;
+        };
+        ops[0x7b] = () -> {
+            rra(abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0x6f] = () -> {
+            rra(abs());
+            cycles += 6;
+        };
+        ops[0x7f] = () -> {
+            rra(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // RTI
+        ops[0x40] = () -> {
+            rti();
+            cycles += 6;
+        };
+        // RTS
+        ops[0x60] = () -> {
+            rts();
+            cycles += 6;
+        };
+        // SAX (unofficial)
+        ops[0x83] = () -> {
+            sax(indX());
+            cycles += 6;
+        };
+        ops[0x87] = () -> {
+            sax(zpg());
+            cycles += 3;
+        };
+        ops[0x97] = () -> {
+            sax(zpg(Y));
+            cycles += 4;
+        };
+        ops[0x8f] = () -> {
+            sax(abs());
+            cycles += 4;
+        };
+        // SBC
+        ops[0xe1] = () -> {
+            sbc(indX());
+            cycles += 6;
+        };
+        ops[0xf1] = () -> {
+            sbc(indY(dummy.ONCARRY));
+            cycles += 5 + pb;
+        };
+        ops[0xe5] = () -> {
+            sbc(zpg());
+            cycles += 3;
+        };
+        ops[0xf5] = () -> {
+            sbc(zpg(X));
+            cycles += 4;
+        };
+        ops[0xe9] = () -> {
+            sbc(imm());
+            cycles += 2;
+        };
+        ops[0xf9] = () -> {
+            sbc(abs(Y, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        ops[0xeb] = () -> {
+            sbc(imm());
+            cycles += 2;
+        };
+        ops[0xed] = () -> {
+            sbc(abs());
+            cycles += 4;
+        };
+        ops[0xfd] = () -> {
+            sbc(abs(X, dummy.ONCARRY));
+            cycles += 4 + pb;
+        };
+        // SHX (unofficial)
+        ops[0x9e] = () -> {
+            shx(abs(Y, dummy.ALWAYS));
+            cycles += 5;
+        };
+        // SHY (unofficial)
+        ops[0x9c] = () -> {
+            shy(abs(X, dummy.ALWAYS));
+            cycles += 5;
+        };
+        // SLO (unofficial)
+        ops[0x03] = () -> {
+            slo(indX());
+            cycles += 8;
+        };
+        ops[0x07] = () -> {
+            slo(zpg());
+            cycles += 5;
+        };
+        ops[0x0f] = () -> {
+            slo(abs());
+            cycles += 6;
+        };
+        ops[0x13] = () -> {
+            slo(indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0x17] = () -> {
+            slo(zpg(X));
+            cycles += 6;
+        };
+        ops[0x1b] = () -> {
+            slo(abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0x1f] = () -> {
+            slo(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // SRE (unofficial)
+        ops[0x43] = () -> {
+            sre(indX());
+            cycles += 8;
+        };
+        ops[0x53] = () -> {
+            sre(indY(dummy.ALWAYS));
+            cycles += 8;
+        };
+        ops[0x47] = () -> {
+            sre(zpg());
+            cycles += 5;
+        };
+        ops[0x57] = () -> {
+            sre(zpg(X));
+            cycles += 6;
+        };
+        ops[0x5b] = () -> {
+            sre(abs(Y, dummy.ALWAYS));
+            cycles += 7;
+        };
+        ops[0x4f] = () -> {
+            sre(abs());
+            cycles += 6;
+        };
+        ops[0x5f] = () -> {
+            sre(abs(X, dummy.ALWAYS));
+            cycles += 7;
+        };
+        // STA
+        ops[0x85] = () -> {
+            sta(zpg());
+            cycles += 3;
+        };
+        ops[0x95] = () -> {
+            sta(zpg(X));
+            cycles += 4;
+        };
+        ops[0x8d] = () -> {
+            sta(abs());
+            cycles += 4;
+        };
+        ops[0x9d] = () -> {
+            sta(abs(X, dummy.ALWAYS));
+            cycles += 5;
+        };
+        ops[0x99] = () -> {
+            sta(abs(Y, dummy.ALWAYS));
+            cycles += 5;
+        };
+        ops[0x81] = () -> {
+            sta(indX());
+            cycles += 6;
+        };
+        ops[0x91] = () -> {
+            sta(indY(dummy.ALWAYS));
+            cycles += 6;
+        };
+        // Stack instructions
+        ops[0x9a] = () -> {
+            S = X;
+            cycles += 2;
+        };
+        ops[0xba] = () -> {
+            X = S;
+            cycles += 2;
+            setflags(X);
+        };
+        ops[0x48] = () -> {
+            ram.read(PC + 1);   //dummy fetch
+            push(A);
+            cycles += 3;
+        };
+        ops[0x68] = () -> {
+            ram.read(PC + 1);   //dummy fetch
+            A = pop();
+            setflags(A);
+            cycles += 4;
+        };
+        ops[0x08] = () -> {
+            ram.read(PC + 1);   //dummy fetch
+            push(flagstobyte() | utils.BIT4);
+            cycles += 3;
+        };
+        ops[0x28] = () -> {
+            //plp
+            delayInterrupt();
+            ram.read(PC + 1);   //dummy fetch
+            bytetoflags(pop());
+            cycles += 4;
+        };
+        // STX
+        ops[0x86] = () -> {
+            stx(zpg());
+            cycles += 3;
+        };
+        ops[0x96] = () -> {
+            stx(zpg(Y));
+            cycles += 4;
+        };
+        ops[0x8e] = () -> {
+            stx(abs());
+            cycles += 4;
+        };
+        // STY
+        ops[0x84] = () -> {
+            sty(zpg());
+            cycles += 3;
+        };
+        ops[0x94] = () -> {
+            sty(zpg(X));
+            cycles += 4;
+        };
+        ops[0x8c] = () -> {
+            sty(abs());
+            cycles += 4;
+        };
+        // TAS (unofficial)
+        ops[0x9b] = () -> {
+            tas(abs(Y, dummy.ALWAYS));
+            cycles += 5;
+        };
+        // XAA (unofficial)
+        ops[0x8b] = () -> {
+            xaa(imm());
+            cycles += 2;
+        };
+        return ops;
+    }
+
+
     /*
      really every instruction should be reading from or writing something to memory every cycle.
      Even when all that's happening that cycle is the processor updating state internally
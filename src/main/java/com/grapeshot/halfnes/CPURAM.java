@@ -4,10 +4,9 @@
  */
 package com.grapeshot.halfnes;
 
-import com.grapeshot.halfnes.cheats.Patch;
+import com.grapeshot.halfnes.cheats.PatchTable;
 import com.grapeshot.halfnes.mappers.Mapper;
 import java.util.Arrays;
-import java.util.HashMap;
 
 /**
  *
@@ -19,38 +18,87 @@ public class CPURAM {
 
     public static final int RAM_SIZE = 2048;
 
-    private int[] wram = new int[RAM_SIZE];
+    private byte[] wram = new byte[RAM_SIZE];
     Mapper mapper;
     public APU apu;
     PPU ppu; //need these to call their write handlers from here.
-    private HashMap<Integer, Patch> patches = new HashMap<>();
+    //cheat codes, with the per page patch arrays pulled out so pages without
+    //a patch on them only cost a null check
+    private PatchTable patches = PatchTable.EMPTY;
+    private int[][] patchpages = patches.getPages();
+    //page table for reads: each 256 byte page of the address space either
+    //points straight into an array (WRAM, PRG RAM, banked PRG ROM) or is null
+    //and goes through the I/O handlers below. One extra entry for the odd
+    //read that runs off the end of the address space.
+    private final byte[][] pages = new byte[0x101][];
+    private final int[] pageoffsets = new int[0x101];
+    //and the same for writes, only for cartridge pages where a write does
+    //nothing but store the byte (plain PRG RAM), so they skip the mapper, the
+    //PPU catch up and the page table checks that real cart writes need
+    private final byte[][] writepages = new byte[0x101][];
+    private final int[] writeoffsets = new int[0x101];
 
     public CPURAM(final Mapper mappy) {
         mapper = mappy;
         // init memory
-        Arrays.fill(wram, 0xff);
+        Arrays.fill(wram, (byte) 0xff);
+        mapWram();
+    }
+
+    private void mapWram() {
+        //2k of ram, mirrored 4 times
+        for (int page = 0; page < 0x20; ++page) {
+            mapPage(page, wram, (page & 7) << 8);
+        }
+    }
+
+    public final void mapPage(final int page, final byte[] mem, final int offset) {
+        pages[page] = mem;
+        pageoffsets[page] = offset;
+    }
+
+    public final void unmapPage(final int page) {
+        pages[page] = null;
+        writepages[page] = null;
+    }
+
+    /**
+     * Sends writes to a cartridge page straight into the array. Only for
+     * memory the mapper doesn't need to see written, see
+     * Mapper.plainPRGRAMWrites. unmapPage undoes this too.
+     */
+    public final void mapWritePage(final int page, final byte[] mem, final int offset) {
+        writepages[page] = mem;
+        writeoffsets[page] = offset;
+    }
+
+    public final void unmapWritePage(final int page) {
+        writepages[page] = null;
     }
 
     public final int read(final int addr) {
-        if (!patches.isEmpty()) {
-            int retval = _read(addr);
-            Patch p = patches.get(addr);
-            if (p != null && p.getAddress() == addr && p.matchesData(retval)) {
-                return p.getData();
-            }
-            return retval;
-        } else {
-            return _read(addr);
+        if (patchpages[addr >> 8] != null) {
+            return patches.apply(addr, _read(addr));
         }
+        return _read(addr);
     }
 
     public final int _read(final int addr) {
+        final byte[] page = pages[addr >> 8];
+        if (page != null) {
+            return page[pageoffsets[addr >> 8] + (addr & 0xff)] & 0xff;
+        }
         if (addr > 0x4018) {
+            if (addr < 0x6000) {
+                //mapper registers, may report on what the ppu is doing
+                ppu.catchUp();
+            }
             return mapper.cartRead(addr);
         } else if (addr <= 0x1fff) {
-            return wram[addr & 0x7FF];
+            return wram[addr & 0x7FF] & 0xff;
         } else if (addr <= 0x3fff) {
             // 8 byte ppu regs; mirrored lots
+            ppu.catchUp();
             return ppu.read(addr & 7);
         } else if (0x4000 <= addr && addr <= 0x4018) {
             return apu.read(addr - 0x4000);
@@ -64,11 +112,21 @@ public class CPURAM {
 //            System.err.println("DANGER WILL ROBINSON");
 //        }
         if (addr > 0x4018) {
+            final byte[] page = writepages[addr >> 8];
+            if (page != null) {
+                page[writeoffsets[addr >> 8] + (addr & 0xff)] = (byte) data;
+                return;
+            }
+            //bank switches and mirroring changes have to land on the right dot
+            ppu.catchUp();
             mapper.cartWrite(addr, data);
+            mapper.updateCPUPages();
+            mapper.updatePPUPages();
         } else if (addr <= 0x1fff) {
-            wram[addr & 0x7FF] = data;
+            wram[addr & 0x7FF] = (byte) data;
         } else if (addr <= 0x3fff) {
             // 8 byte ppu regs; mirrored lots
+            ppu.catchUp();
             ppu.write(addr & 7, data);
         } else if (0x4000 <= addr && addr <= 0x4018) {
             apu.write(addr - 0x4000, data);
@@ -83,15 +141,17 @@ public class CPURAM {
         this.ppu = ppu;
     }
 
-    public void setPatches(HashMap<Integer, Patch> p) {
+    public void setPatches(PatchTable p) {
         this.patches = p;
+        this.patchpages = p.getPages();
     }
 
-    public int[] getWram() {
+    public byte[] getWram() {
         return wram;
     }
 
-    public void setWram(int[] wram) {
+    public void setWram(byte[] wram) {
         this.wram = wram;
+        mapWram();
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes;
+
+import com.grapeshot.halfnes.mappers.Mapper;
+
+/**
+ * The settings one emulator instance runs with. Configs are immutable: the
+ * with* methods return a changed copy, and a new config is handed to the NES
+ * with setConfig(). Every instance has its own, so emulators with different
+ * settings can run side by side in one JVM. The Swing UI builds these from the
+ * user's preferences; nothing in the core reads preferences itself.
+ */
+public final class EmulatorConfig {
+
+    /**
+     * Same values as the preference defaults.
+     */
+    public static final EmulatorConfig DEFAULTS = new Builder().build();
+
+    private final Mapper.TVType region;
+    private final boolean sleep, soundEnable;
+    private final int sampleRate, outputVolume;
+    private final boolean showScope, soundFiltering, ntView, catchUp,
+            tableDispatch, scanlineRenderer;
+    private final int audioLatency;
+    private final boolean saveSRAM;
+
+    /**
+     * The settings of a config that's still being made, so the fields above
+     * can stay final. Starts out as the defaults or as a copy of another
+     * config, and the with* methods change one thing on it.
+     */
+    private static final class Builder {
+
+        Mapper.TVType region = null;
+        boolean sleep = true, soundEnable = true;
+        int sampleRate = 44100, outputVolume = 13107;
+        boolean showScope = false, soundFiltering = true, ntView = false,
+                catchUp = true, tableDispatch = false, scanlineRenderer = true;
+        int audioLatency = 50;
+        boolean saveSRAM = true;
+
+        Builder() {
+        }
+
+        Builder(EmulatorConfig from) {
+            region = from.region;
+            sleep = from.sleep;
+            soundEnable = from.soundEnable;
+            sampleRate = from.sampleRate;
+            outputVolume = from.outputVolume;
+            showScope = from.showScope;
+            soundFiltering = from.soundFiltering;
+            ntView = from.ntView;
+            catchUp = from.catchUp;
+            tableDispatch = from.tableDispatch;
+            scanlineRenderer = from.scanlineRenderer;
+            audioLatency = from.audioLatency;
+            saveSRAM = from.saveSRAM;
+        }
+
+        EmulatorConfig build() {
+            return new EmulatorConfig(this);
+        }
+    }
+
+    private EmulatorConfig(Builder b) {
+        region = b.region;
+        sleep = b.sleep;
+        soundEnable = b.soundEnable;
+        sampleRate = b.sampleRate;
+        outputVolume = b.outputVolume;
+        showScope = b.showScope;
+        soundFiltering = b.soundFiltering;
+        ntView = b.ntView;
+        catchUp = b.catchUp;
+        tableDispatch = b.tableDispatch;
+        scanlineRenderer = b.scanlineRenderer;
+        audioLatency = b.audioLatency;
+        saveSRAM = b.saveSRAM;
+    }
+
+    /**
+     * Returns the TV system to run as, or null to use whatever the ROM header
+     * says.
+     */
+    public Mapper.TVType getRegion() {
+        return region;
+    }
+
+    public EmulatorConfig withRegion(Mapper.TVType region) {
+        final Builder b = new Builder(this);
+        b.region = region;
+        return b.build();
+    }
+
+    /**
+     * Returns true if the frame limiter sleeps to hold emulation to real time.
+     */
+    public boolean isSleep() {
+        return sleep;
+    }
+
+    public EmulatorConfig withSleep(boolean sleep) {
+        final Builder b = new Builder(this);
+        b.sleep = sleep;
+        return b.build();
+    }
+
+    public boolean isSoundEnable() {
+        return soundEnable;
+    }
+
+    public EmulatorConfig withSoundEnable(boolean soundEnable) {
+        final Builder b = new Builder(this);
+        b.soundEnable = soundEnable;
+        return b.build();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public EmulatorConfig withSampleRate(int sampleRate) {
+        final Builder b = new Builder(this);
+        b.sampleRate = sampleRate;
+        return b.build();
+    }
+
+    /**
+     * Returns the output volume, where 16384 is full scale.
+     */
+    public int getOutputVolume() {
+        return outputVolume;
+    }
+
+    public EmulatorConfig withOutputVolume(int outputVolume) {
+        final Builder b = new Builder(this);
+        b.outputVolume = outputVolume;
+        return b.build();
+    }
+
+    public boolean isShowScope() {
+        return showScope;
+    }
+
+    public EmulatorConfig withShowScope(boolean showScope) {
+        final Builder b = new Builder(this);
+        b.showScope = showScope;
+        return b.build();
+    }
+
+    public boolean isSoundFiltering() {
+        return soundFiltering;
+    }
+
+    public EmulatorConfig withSoundFiltering(boolean soundFiltering) {
+        final Builder b = new Builder(this);
+        b.soundFiltering = soundFiltering;
+        return b.build();
+    }
+
+    /**
+     * Returns true if the PPU opens the nametable viewer. Only looked at when
+     * a ROM is loaded.
+     */
+    public boolean isNtView() {
+        return ntView;
+    }
+
+    public EmulatorConfig withNtView(boolean ntView) {
+        final Builder b = new Builder(this);
+        b.ntView = ntView;
+        return b.build();
+    }
+
+    /**
+     * Returns true if the CPU runs ahead of the PPU with catch-up scheduling,
+     * false to run them in lockstep.
+     */
+    public boolean isCatchUp() {
+        return catchUp;
+    }
+
+    public EmulatorConfig withCatchUp(boolean catchUp) {
+        final Builder b = new Builder(this);
+        b.catchUp = catchUp;
+        return b.build();
+    }
+
+    /**
+     * Returns true if the CPU decodes opcodes through its lookup table rather
+     * than the switch.
+     */
+    public boolean isTableDispatch() {
+        return tableDispatch;
+    }
+
+    public EmulatorConfig withTableDispatch(boolean tableDispatch) {
+        final Builder b = new Builder(this);
+        b.tableDispatch = tableDispatch;
+        return b.build();
+    }
+
+    /**
+     * Returns true if the PPU may draw whole scanlines at once when nothing
+     * can change partway through them, false to always go dot by dot. Only
+     * makes a difference with catch-up scheduling.
+     */
+    public boolean isScanlineRenderer() {
+        return scanlineRenderer;
+    }
+
+    public EmulatorConfig withScanlineRenderer(boolean scanlineRenderer) {
+        final Builder b = new Builder(this);
+        b.scanlineRenderer = scanlineRenderer;
+        return b.build();
+    }
+
+    /**
+     * Returns how many milliseconds of sound the audio output tries to keep
+     * queued up. Less is more responsive, more is safer from dropouts.
+     */
+    public int getAudioLatency() {
+        return audioLatency;
+    }
+
+    public EmulatorConfig withAudioLatency(int audioLatency) {
+        final Builder b = new Builder(this);
+        b.audioLatency = audioLatency;
+        return b.build();
+    }
+
+    /**
+     * Returns true if battery backed save RAM is loaded from and saved to a
+     * .sav file next to the ROM. Turn it off for instances that have to
+     * start the same way every time and not touch each other's files.
+     */
+    public boolean isSaveSRAM() {
+        return saveSRAM;
+    }
+
+    public EmulatorConfig withSaveSRAM(boolean saveSRAM) {
+        final Builder b = new Builder(this);
+        b.saveSRAM = saveSRAM;
+        return b.build();
+    }
+}
@@ -54,13 +54,12 @@ public class FileUtils {
         return s.substring(0, split);
     }
 
-    public static void writetofile(final int[] array, final String path) {
-        //note: does NOT write the ints directly to the file - only the low bytes.
+    public static void writetofile(final byte[] array, final String path) {
         AsyncWriter writer = new AsyncWriter(array, path);
         writer.run();
     }
 
-    public static void asyncwritetofile(final int[] array, final String path) {
+    public static void asyncwritetofile(final byte[] array, final String path) {
         //now does the file writing in the dispatch thread
         //hopefully that will eliminate annoying hitches when file system's slow
         //and not do pathological stuff like threads are prone to
@@ -70,10 +69,10 @@ public class FileUtils {
 
     private static class AsyncWriter implements Runnable {
 
-        private final int[] a;
+        private final byte[] a;
         private final String path;
 
-        public AsyncWriter(final int[] a, final String path) {
+        public AsyncWriter(final byte[] a, final String path) {
             this.a = a;
             this.path = path;
         }
@@ -83,11 +82,7 @@ public class FileUtils {
             if (a != null && path != null) {
                 try {
                     FileOutputStream b = new FileOutputStream(path);
-                    byte[] buf = new byte[a.length];
-                    for (int i = 0; i < a.length; ++i) {
-                        buf[i] = (byte) (a[i] & 0xff);
-                    }
-                    b.write(buf);
+                    b.write(a);
                     b.flush();
                     b.close();
                 } catch (IOException e) {
@@ -102,7 +97,7 @@ public class FileUtils {
         return new File(path).getName();
     }
 
-    public static int[] readfromfile(final String path) {
+    public static byte[] readfromfile(final String path) {
         File f = new File(path);
         byte[] bytes = new byte[(int) f.length()];
         FileInputStream fis;
@@ -114,15 +109,7 @@ public class FileUtils {
                 System.err.println("Failed to load file");
             e.printStackTrace();
             }
-        int[] ints = new int[bytes.length];
-
-        for (int i = 0;
-                i < bytes.length;
-                i++) {
-            ints[i] = (short) (bytes[i] & 0xFF);
-        }
-
-        return ints;
+        return bytes;
     }
 
     public static boolean exists(final String path) {
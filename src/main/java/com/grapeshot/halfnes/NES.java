@@ -33,6 +33,7 @@ public class NES implements ProjectInfo {
     // Pro Action Replay device
     private ActionReplay actionReplay;
     private AudioOutInterface audioOutInterface;
+    private EmulatorConfig config = EmulatorConfig.DEFAULTS;
 
     public NES(AudioOutInterface audioOutInterface) {
         this.audioOutInterface = audioOutInterface;
@@ -50,6 +51,23 @@ public class NES implements ProjectInfo {
         gui.setNES(this);
     }
 
+    public EmulatorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Switches this instance to new settings. Region, frame limiter and
+     * scheduling changes apply to the running game right away, sound and the
+     * nametable viewer on the next ROM load.
+     */
+    public synchronized void setConfig(EmulatorConfig config) {
+        this.config = config;
+        if (mapper != null) {
+            mapper.setConfig(config);
+        }
+        setParameters();
+    }
+
     public CPURAM getCPURAM() {
         return this.cpuram;
     }
@@ -155,6 +173,7 @@ public class NES implements ProjectInfo {
                 loader.parseHeader();
                 newmapper = MapperHelper.getCorrectMapper(loader);
                 newmapper.setLoader(loader);
+                newmapper.setConfig(config);
                 newmapper.loadrom();
             } catch (BadMapperException e) {
                 gui.messageBox("Error Loading File: ROM is"
@@ -194,8 +213,12 @@ public class NES implements ProjectInfo {
                 loadSRAM();
             }
             //and start emulation
+            mapper.updateCPUPages();
+            mapper.updatePPUPages();
             cpu.init(initialPC);
             mapper.init();
+            mapper.updateCPUPages();
+            mapper.updatePPUPages();
             setParameters();
             runEmulation = true;
         } else {
@@ -205,7 +228,8 @@ public class NES implements ProjectInfo {
     }
 
     private void saveSRAM(final boolean async) {
-        if (mapper != null && mapper.hasSRAM() && mapper.supportsSaves()) {
+        if (mapper != null && mapper.hasSRAM() && mapper.supportsSaves()
+                && config.isSaveSRAM()) {
             if (async) {
                 FileUtils.asyncwritetofile(mapper.getPRGRam().clone(), FileUtils.stripExtension(curRomPath) + ".sav");
             } else {
@@ -216,7 +240,7 @@ public class NES implements ProjectInfo {
 
     private void loadSRAM() {
         final String name = FileUtils.stripExtension(curRomPath) + ".sav";
-        if (FileUtils.exists(name) && mapper.supportsSaves()) {
+        if (config.isSaveSRAM() && FileUtils.exists(name) && mapper.supportsSaves()) {
             mapper.setPRGRAM(FileUtils.readfromfile(name));
         }
 
@@ -238,6 +262,8 @@ public class NES implements ProjectInfo {
     public synchronized void reset() {
         if (cpu != null) {
             mapper.reset();
+            mapper.updateCPUPages();
+            mapper.updatePPUPages();
             cpu.reset();
             runEmulation = true;
             apu.pause();
@@ -312,6 +338,11 @@ public class NES implements ProjectInfo {
     public synchronized void setParameters() {
         if (ppu != null) {
             ppu.setParameters();
+            ppu.setCatchUp(config.isCatchUp());
+            ppu.setScanlineRenderer(config.isScanlineRenderer());
+        }
+        if (cpu != null) {
+            cpu.setTableDispatch(config.isTableDispatch());
         }
         if (limiter != null && mapper != null) {
             switch (mapper.getTVType()) {
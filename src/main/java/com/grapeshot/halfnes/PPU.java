@@ -11,14 +11,13 @@ import com.grapeshot.halfnes.ui.GUIInterface;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 
-import static com.grapeshot.halfnes.PrefsSingleton.get;
 import static com.grapeshot.halfnes.utils.reverseByte;
 import static java.awt.image.BufferedImage.TYPE_INT_BGR;
 import static java.util.Arrays.fill;
 
 public class PPU {
 
-    private final static boolean PPUDEBUG = get().getBoolean("ntView", false);
+    private final boolean ppudebug;
 
     public Mapper mapper;
     public int oamaddr, oamstart, readbuffer = 0;
@@ -30,7 +29,7 @@ public class PPU {
     private int framecount = 0;
     private int div = 2;
 
-    private final int[] OAM = new int[256];
+    private final byte[] OAM = new byte[256];
 
     public boolean even = true;
 
@@ -40,34 +39,77 @@ public class PPU {
 
     public boolean vblankflag, nmicontrol;
     private int emph;
-    public final int[] pal;
+    public final byte[] pal;
     private int vraminc = 1;
     public int openbus = 0; //the last value written to the PPU
     private int[] ppuReg = new int[8];
 
     //rendering stuff
     private int[] bitmap = new int[240 * 256];
+    //the shift registers hold 2 bit pixels (high plane bit on top) rather
+    //than a register per bit plane, so they're loaded straight from decoded
+    //chr rows and a pixel is one shift and mask
     private int[] secOAM = new int[32],
-            spriteshiftregH = new int[8],
-            spriteshiftregL = new int[8], spriteXlatch = new int[8],
+            spriteshiftreg = new int[8], spriteXlatch = new int[8],
             spritepals = new int[8];
 
-    private int found, bgShiftRegH, bgShiftRegL, bgAttrShiftRegH, bgAttrShiftRegL;
+    private int found, bgAttrShiftReg;
+    private long bgShiftReg;
+    //false if the mapper has to see every pattern table read
+    private final boolean decodedchr;
+    //the mapper's page table, for nametable and attribute fetches
+    private final byte[][] vrampages;
+    private final int[] vramoffsets;
     private final boolean[] spritebgflags = new boolean[8];
     private final int[] bgcolors = new int[256];
+    //what each line looked like when it was last finished, and a version
+    //number per line that goes up whenever a line comes out different, so
+    //renderers can skip the lines they already have
+    private final int[] lastbitmap = new int[240 * 256],
+            lastbgcolors = new int[240], lineversions = new int[240];
     private int nextattr;
     private int linelowbits;
-    private int linehighbits;
     private int penultimateattr;
     private int numscanlines;
     private int vblankline;
     private final int[] cpudivider = {3, 3, 3, 3, 3};
+    private int maxdivider = 3, dividerperiod = 15;
+
+    //catch-up scheduling: rather than stopping for the CPU every third dot,
+    //the CPU runs whole instructions ahead of the PPU and the PPU is only
+    //brought up to the CPU's current cycle when the CPU touches something
+    //the PPU can see or change. Lockstep is still there as the reference.
+    private boolean catchup = true;
+    private boolean inframe = false, running = false, tickpending = false;
+    private int ticks, frameend, dotsleft, syncat = Integer.MAX_VALUE;
+    //when the CPU has already run past the end of a visible line without
+    //touching the PPU or the mapper, that whole line can be drawn at once
+    private boolean linerenderer = true;
+    //opaque sprite pixels for the line being drawn, as slot << 2 | color,
+    //and how far along the line drawSprites has used it (-1 if it isn't)
+    private final int[] spriteline = new int[256];
+    private int spritelinex = -1;
+    //oam offsets of the sprites that fall on each line, in oam order, so
+    //evaluation doesn't have to look at all 64. Rebuilt before the next
+    //evaluation after any sprite's y position or the sprite size changes.
+    private final int[][] spritebuckets = new int[256 + 15][64];
+    private final int[] bucketsizes = new int[256 + 15];
+    private boolean bucketsdirty = true;
+    //frames that aren't drawn still do everything the CPU or the mapper can
+    //see (fetches, sprite 0 hits, overflow) but don't write any pixels
+    private boolean drawing = true, drawnext = true;
+    //what the NMI line was last set to, it's only pushed to the CPU when
+    //vblankflag or nmicontrol change it
+    private boolean nmiline = false;
+    //polls of the mapper's A12 input at the same level as the last one it
+    //got, held back until something else could look at the A12 timer
+    private int a12addr = -1, a12polls = 0;
 
     private DebugUI debuggui;
     private BufferedImage nametableView;
 
     public PPU(final Mapper mapper) {
-        this.pal = new int[]{0x09, 0x01, 0x00, 0x01, 0x00, 0x02, 0x02, 0x0D,
+        this.pal = new byte[]{0x09, 0x01, 0x00, 0x01, 0x00, 0x02, 0x02, 0x0D,
             0x08, 0x10, 0x08, 0x24, 0x00, 0x00, 0x04, 0x2C, 0x09, 0x01, 0x34,
             0x03, 0x00, 0x04, 0x00, 0x14, 0x08, 0x3A, 0x00, 0x02, 0x00, 0x20,
             0x2C, 0x08};
@@ -77,8 +119,12 @@ public class PPU {
      expecting this set of values and nesemu1, BizHawk, RockNES, MyNes use it
          */
         this.mapper = mapper;
-        fill(OAM, 0xff);
-        if (PPUDEBUG) {
+        ppudebug = mapper.getConfig().isNtView();
+        decodedchr = !mapper.watchesChrReads();
+        vrampages = mapper.getPPUPages();
+        vramoffsets = mapper.getPPUPageOffsets();
+        fill(OAM, (byte) 0xff);
+        if (ppudebug) {
             nametableView = new BufferedImage(512, 480, TYPE_INT_BGR);
             debuggui = new DebugUI(512, 480);
             debuggui.run();
@@ -91,6 +137,8 @@ public class PPU {
         div = 2;
         scanline = 0;
         cycles = 0;
+        //oam might have been loaded from a save state
+        bucketsdirty = true;
         //needs to write to trigger side-effects
         write(0, ppuReg[0]);
         write(1, ppuReg[1]);
@@ -117,11 +165,205 @@ public class PPU {
                 cpudivider[0] = 3;
                 break;
         }
+        maxdivider = 0;
+        dividerperiod = 0;
+        for (int d : cpudivider) {
+            maxdivider = Math.max(maxdivider, d);
+            dividerperiod += d;
+        }
+    }
+
+    public void setCatchUp(final boolean on) {
+        //takes effect at the start of the next frame
+        catchup = on;
+    }
+
+    public boolean isCatchUp() {
+        return catchup;
+    }
+
+    public void setScanlineRenderer(final boolean on) {
+        linerenderer = on;
+    }
+
+    /**
+     * Turns pixel output on or off, starting with the next frame. A frame
+     * that isn't drawn runs exactly the same as far as the game can tell, but
+     * leaves the last picture in the frame buffer and isn't sent to the GUI.
+     */
+    public void setDrawing(final boolean on) {
+        drawnext = on;
+    }
+
+    public boolean isDrawing() {
+        return drawnext;
+    }
+
+    /**
+     * Returns a version number for each line of the frame the GUI was last
+     * given, which goes up whenever the PPU draws that line differently (its
+     * pixels or its bg color). A renderer can skip any line whose number is
+     * the same as the last time it rendered from this array. The array stays
+     * the same for the life of the PPU.
+     */
+    public int[] getLineVersions() {
+        return lineversions;
     }
 
     public void runFrame() {
-        for (int line = 0; line < numscanlines; ++line) {
-            clockLine(line);
+        drawing = drawnext;
+        if (catchup) {
+            runFrameCatchUp();
+        } else {
+            for (int line = 0; line < numscanlines; ++line) {
+                clockLine(line);
+            }
+        }
+    }
+
+    private void runFrameCatchUp() {
+        final CPU cpu = mapper.cpu;
+        cycles = firstDot(0);
+        dotsleft = numscanlines * 341 - cycles;
+        ticks = cpu.clocks;
+        frameend = ticks + ticksIn(dotsleft);
+        tickpending = false;
+        inframe = true;
+        syncat = nextSync();
+        while (cpu.clocks < frameend) {
+            cpu.runcycle();
+            mapper.cpucycle(1);
+        }
+        //the CPU is done for this frame, run out the rest of the dots
+        running = true;
+        if (tickpending) {
+            tickpending = false;
+            nextDot();
+        }
+        while (dotsleft > 0) {
+            if (canRenderLine()) {
+                renderLine();
+                continue;
+            }
+            dot();
+            nextDot();
+        }
+        running = false;
+        inframe = false;
+        syncat = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Brings the PPU up to the CPU's current cycle. Called before the CPU
+     * accesses anything the PPU could see or change. Does nothing outside of a
+     * catch-up frame, since in lockstep the PPU is never behind.
+     */
+    public final void catchUp() {
+        if (inframe && !running) {
+            runTo(mapper.cpu.clocks);
+        }
+    }
+
+    private void nmiChanged() {
+        //vblank flag or nmi enable changed under the CPU, so the PPU has to
+        //catch up again at the next instruction for it to see the new NMI line
+        if (inframe) {
+            syncat = 0;
+        }
+    }
+
+    /**
+     * Called by the CPU at every instruction boundary, catches up the PPU only
+     * if something it did since the last sync could have changed the NMI or IRQ
+     * lines.
+     *
+     * @param cpucycle CPU cycle the instruction starts on
+     */
+    public final void sync(final int cpucycle) {
+        if (cpucycle >= syncat && inframe && !running) {
+            runTo(cpucycle);
+            syncat = nextSync();
+        }
+    }
+
+    private void runTo(final int cpucycle) {
+        running = true;
+        while (ticks < cpucycle) {
+            if (tickpending) {
+                tickpending = false;
+                nextDot();
+            }
+            if (canRenderLine() && ticks + ticksIn(341 - cycles) < cpucycle) {
+                //the CPU is already past the end of this line, so nothing it
+                //did can have changed the PPU partway through
+                ticks += renderLine();
+                continue;
+            }
+            if (dot()) {
+                //stop partway through the dot, same place lockstep runs the CPU
+                ++ticks;
+                tickpending = true;
+            } else {
+                nextDot();
+            }
+        }
+        running = false;
+    }
+
+    private void nextDot() {
+        endDot();
+        if (++cycles > 340) {
+            cycles = 0;
+        }
+        --dotsleft;
+    }
+
+    /**
+     * @return the first CPU cycle at which the PPU needs to be caught up at an
+     * instruction boundary for the CPU to see the same NMI and IRQ state it
+     * would see in lockstep.
+     */
+    private int nextSync() {
+        if (mapper.isPPUClocked()) {
+            //mapper IRQs (and NSF play calls) can come from any dot
+            return ticks + 1;
+        }
+        //otherwise the only thing the PPU does by itself that the CPU sees is
+        //the NMI line, which only changes when vblank starts or ends
+        final int last = scanline * 341 + cycles - (tickpending ? 0 : 1);
+        return Math.min(syncBefore(last, vblankline * 341 + 1),
+                syncBefore(last, (numscanlines - 1) * 341));
+    }
+
+    private int syncBefore(final int last, final int event) {
+        if (event <= last) {
+            return Integer.MAX_VALUE;
+        }
+        //each CPU cycle takes at most maxdivider dots, so this never lands late
+        return ticks + (event - 1 - last) / maxdivider + 1;
+    }
+
+    /**
+     * @return how many CPU cycles the divider will clock in the next dots
+     */
+    private int ticksIn(int dots) {
+        int d = div, ctr = cpudividerctr, n = 0;
+        while (true) {
+            if (d == 0 && ctr == 0 && dots >= dividerperiod) {
+                //skip over whole runs through the divider pattern
+                n += (dots / dividerperiod) * cpudivider.length;
+                dots %= dividerperiod;
+            }
+            final int wait = (d < cpudivider[ctr]) ? cpudivider[ctr] - d : 1;
+            if (wait > dots) {
+                return n;
+            }
+            dots -= wait;
+            d = (d + wait) % cpudivider[ctr];
+            if (d == 0) {
+                ++n;
+                ctr = (ctr + 1) % cpudivider.length;
+            }
         }
     }
 
@@ -137,6 +379,7 @@ public class PPU {
         switch (regnum) {
             case 2:
                 even = true;
+                nmiChanged();
                 if (scanline == 241) {
                     if (cycles == 1) {//suppress NMI flag if it was just turned on this same cycle
                         vblankflag = false;
@@ -159,7 +402,7 @@ public class PPU {
                 break;
             case 4:
                 // reading this is NOT reliable but some games do it anyways
-                openbus = OAM[oamaddr];
+                openbus = OAM[oamaddr] & 0xff;
                 //System.err.println("codemasters?");
                 if (renderingOn() && (scanline <= 240)) {
                     if (cycles < 64) {
@@ -182,10 +425,10 @@ public class PPU {
                 final int temp;
                 if ((loopyV & 0x3fff) < 0x3f00) {
                     temp = readbuffer;
-                    readbuffer = mapper.ppuRead(loopyV & 0x3fff);
+                    readbuffer = ppuRead(loopyV & 0x3fff);
                 } else {
-                    readbuffer = mapper.ppuRead((loopyV & 0x3fff) - 0x1000);
-                    temp = mapper.ppuRead(loopyV);
+                    readbuffer = ppuRead((loopyV & 0x3fff) - 0x1000);
+                    temp = ppuRead(loopyV);
                 }
                 if (!renderingOn() || (scanline > 240 && scanline < (numscanlines - 1))) {
                     loopyV += vraminc;
@@ -238,7 +481,11 @@ public class PPU {
                 vraminc = (((data & (utils.BIT2)) != 0) ? 32 : 1);
                 sprpattern = ((data & (utils.BIT3)) != 0);
                 bgpattern = ((data & (utils.BIT4)) != 0);
-                spritesize = ((data & (utils.BIT5)) != 0);
+                final boolean size = ((data & (utils.BIT5)) != 0);
+                if (size != spritesize) {
+                    bucketsdirty = true;
+                }
+                spritesize = size;
                 /*bit 6 is kind of a halt and catch fire situation since it outputs
                  ppu color data on the EXT pins that are tied to ground if set
                  and that'll make the PPU get very hot from sourcing the current. 
@@ -246,6 +493,7 @@ public class PPU {
                  useless for emulators. I will ignore it.
                  */
                 nmicontrol = ((data & (utils.BIT7)) != 0);
+                nmiChanged();
 
                 break;
             case 1: //PPUMASK (2001)
@@ -273,9 +521,15 @@ public class PPU {
             case 4:
                 // PPUOAMDATA(2004)
                 if ((oamaddr & 3) == 2) {
-                    OAM[oamaddr++] = (data & 0xE3);
+                    OAM[oamaddr++] = (byte) (data & 0xE3);
+                } else if ((oamaddr & 3) == 0) {
+                    //a sprite's y position, might move it to other lines
+                    if (OAM[oamaddr] != (byte) data) {
+                        bucketsdirty = true;
+                    }
+                    OAM[oamaddr++] = (byte) data;
                 } else {
-                    OAM[oamaddr++] = data;
+                    OAM[oamaddr++] = (byte) data;
                 }
                 oamaddr &= 0xff;
                 // games don't usually write this directly anyway, it's unreliable
@@ -318,7 +572,7 @@ public class PPU {
                 break;
             case 7:
                 // PPUDATA             
-                mapper.ppuWrite((loopyV & 0x3fff), data);
+                ppuWrite((loopyV & 0x3fff), data);
                 if (!renderingOn() || (scanline > 240 && scanline < (numscanlines - 1))) {
                     loopyV += vraminc;
                 } else if ((loopyV & 0x7000) == 0x7000) {
@@ -349,11 +603,11 @@ public class PPU {
         return ppuReg;
     }
 
-    public int[] getOAM() {
+    public byte[] getOAM() {
         return OAM;
     }
 
-    public int[] getPalette(){
+    public byte[] getPalette(){
         return pal;
     }
 
@@ -381,15 +635,18 @@ public class PPU {
      * Runs the PPU emulation for one NES scan line.
      */
     public final void clockLine(int scanline) {
+        for (cycles = firstDot(scanline); cycles < 341; ++cycles) {
+            clock();
+        }
+    }
+
+    private int firstDot(final int scanline) {
         //skip a PPU clock on line 0 of odd frames when rendering is on
         //and we are in NTSC mode (pal has no skip)
-        int skip = (numscanlines == 262
+        return (numscanlines == 262
                 && scanline == 0
                 && renderingOn()
                 && !((framecount & (utils.BIT1)) != 0)) ? 1 : 0;
-        for (cycles = skip; cycles < 341; ++cycles) {
-            clock();
-        }
     }
 
     private int tileAddr = 0;
@@ -399,6 +656,20 @@ public class PPU {
      * runs the emulation for one PPU clock cycle.
      */
     public final void clock() {
+        if (dot()) {
+            mapper.cpu.runcycle();
+            mapper.cpucycle(1);
+        }
+        endDot();
+    }
+
+    /**
+     * First part of a PPU clock cycle, everything that happens before the CPU
+     * gets to run.
+     *
+     * @return true if the CPU is clocked on this dot
+     */
+    private boolean dot() {
         final boolean renderingOn = renderingOn();
         //cycle based ppu stuff will go here
         if (cycles == 1) {
@@ -462,7 +733,7 @@ public class PPU {
             //handle the case of MMC3 mapper watching A12 toggle
             //even when read or write aren't asserted on the bus
             //needed to pass Blargg's mmc3 tests
-            mapper.checkA12(loopyV & 0x3fff);
+            pollA12(loopyV & 0x3fff);
         }
         if (scanline < 240 && cycles >= 1 && cycles <= 256) {
             int bufferoffset = (scanline << 8) + (cycles - 1);
@@ -474,41 +745,225 @@ public class PPU {
 
             } else if (spritesOn) {
                 //just the sprites then
-                int bgcolor = ((loopyV > 0x3f00 && loopyV < 0x3fff) ? mapper.ppuRead(loopyV) : pal[0]);
-                bitmap[bufferoffset] = bgcolor;
+                //(the palette read still happens when not drawing, the mapper can see it)
+                int bgcolor = ((loopyV > 0x3f00 && loopyV < 0x3fff) ? ppuRead(loopyV) : pal[0]);
+                if (drawing) {
+                    bitmap[bufferoffset] = bgcolor;
+                }
                 drawSprites(scanline, cycles - 1, true);
             } else {
                 //rendering is off, so draw either the background color OR
                 //if the PPU address points to the palette, draw that color instead.
-                int bgcolor = ((loopyV > 0x3f00 && loopyV < 0x3fff) ? mapper.ppuRead(loopyV) : pal[0]);
-                bitmap[bufferoffset] = bgcolor;
+                int bgcolor = ((loopyV > 0x3f00 && loopyV < 0x3fff) ? ppuRead(loopyV) : pal[0]);
+                if (drawing) {
+                    bitmap[bufferoffset] = bgcolor;
+                }
             }
-            //deal with the grayscale flag
-            if (grayscale) {
-                bitmap[bufferoffset] &= 0x30;
+            if (drawing) {
+                //deal with the grayscale flag
+                if (grayscale) {
+                    bitmap[bufferoffset] &= 0x30;
+                }
+                //handle color emphasis
+                bitmap[bufferoffset] = (bitmap[bufferoffset] & 0x3f) | emph;
             }
-            //handle color emphasis
-            bitmap[bufferoffset] = (bitmap[bufferoffset] & 0x3f) | emph;
+        }
+        updateNMI();
+        return clockDivider();
+    }
 
+    private void updateNMI() {
+        //pull NMI line on when conditions are right
+        final boolean nmi = vblankflag && nmicontrol;
+        if (nmi != nmiline) {
+            nmiline = nmi;
+            mapper.cpu.setNMI(nmi);
         }
-        //handle nmi
-        if (vblankflag && nmicontrol) {
-            //pull NMI line on when conditions are right
-            mapper.cpu.setNMI(true);
+    }
+
+    private void pollA12(final int addr) {
+        //a poll at the same A12 level as the last one can't be an edge, all
+        //it does is run down the mapper's timer, so those get counted up and
+        //handed over in one go. Anything that can be an edge goes right away.
+        if (a12addr >= 0 && ((addr ^ a12addr) & 0x1000) == 0) {
+            ++a12polls;
         } else {
-            mapper.cpu.setNMI(false);
+            flushA12();
+            mapper.checkA12(addr);
+            a12addr = addr;
+        }
+    }
+
+    private void flushA12() {
+        if (a12polls > 0) {
+            mapper.checkA12(a12addr, a12polls);
+            a12polls = 0;
         }
+    }
 
+    private int ppuRead(final int addr) {
+        //the mapper may check A12 on reads too, so it has to be up to date
+        flushA12();
+        a12addr = -1;
+        return mapper.ppuRead(addr);
+    }
+
+    private void ppuWrite(final int addr, final int data) {
+        flushA12();
+        a12addr = -1;
+        mapper.ppuWrite(addr, data);
+    }
+
+    private boolean clockDivider() {
         //clock CPU, once every 3 ppu cycles
         div = (div + 1) % cpudivider[cpudividerctr];
         if (div == 0) {
-            mapper.cpu.runcycle(scanline, cycles);
-            mapper.cpucycle(1);
             cpudividerctr = (cpudividerctr + 1) % cpudivider.length;
+            return true;
         }
+        return false;
+    }
+
+    private boolean canRenderLine() {
+        //has to start before any of the line's pixels are drawn; dot 0 does
+        //nothing on a visible line except clock the divider
+        return linerenderer && cycles <= 1 && scanline < 240 && bgOn;
+    }
+
+    /**
+     * Runs the rest of a visible scanline in one go, with the background
+     * drawn a tile at a time and the sprites from a line buffer instead of
+     * scanning all 8 sprite slots for every pixel. Does the same memory reads
+     * in the same order as the dot by dot path, so mappers that watch PPU
+     * fetches see no difference, and leaves the PPU in exactly the same state.
+     * Only valid if nothing touches the PPU or the mapper before the line ends.
+     *
+     * @return how many CPU cycles the divider clocked during the line
+     */
+    private int renderLine() {
+        final int start = cycles;
+        if (scanline == 0) {
+            dotcrawl = true;
+        }
+        bgcolors[scanline] = pal[0];
+        flushSpriteLine();
+        fillSpriteLine();
+        final int line = scanline << 8;
+        for (int tile = 0; tile < 32; ++tile) {
+            //the fetches for dots 2, 4, 6 and 8 of the tile, none of which
+            //change what the pixels before them look like
+            fetchNTByte();
+            penultimateattr = getAttribute(((loopyV & 0xc00) + 0x23c0),
+                    (loopyV) & 0x1f,
+                    (((loopyV) & 0x3e0) >> 5));
+            linelowbits = fetchBGLow();
+            final int row = linelowbits | fetchBGHigh();
+            for (int i = 0; i < 8; ++i) {
+                final int x = (tile << 3) + i;
+                bgAttrShiftReg |= nextattr;
+                if (i == 7) {
+                    bgShiftReg |= row;
+                    nextattr = penultimateattr;
+                }
+                final int spr = spriteline[x];
+                if (drawing) {
+                    final boolean isBG = drawBGPixel(line + x);
+                    drawSpritePixel(scanline, x, spr, isBG);
+                    if (grayscale) {
+                        bitmap[line + x] &= 0x30;
+                    }
+                    bitmap[line + x] = (bitmap[line + x] & 0x3f) | emph;
+                } else if (spr != 0 && (spr >> 2) == 0 && sprite0here) {
+                    //the only thing left to look at is sprite 0 hitting
+                    drawSpritePixel(scanline, x, spr, drawBGPixel(line + x));
+                } else {
+                    bgShiftClock();
+                }
+            }
+            if (tile != 31) {
+                incLoopyVHoriz();
+            } else {
+                incLoopyVVert();
+            }
+        }
+        shiftSprites(256);
+        //dot 257
+        loopyV &= ~0x41f;
+        loopyV |= loopyT & 0x41f;
+        mapper.notifyscanline(scanline);
+        //dot 260, and dot 65 before it
+        oamstart = oamaddr;
+        evalSprites();
+        for (cycles = 321; cycles <= 336; ++cycles) {
+            bgFetch();
+        }
+        //dot 340
+        fetchNTByte();
+        fetchNTByte();
+        updateNMI();
+        int clocked = 0;
+        for (int i = start; i < 341; ++i) {
+            if (clockDivider()) {
+                ++clocked;
+            }
+        }
+        cycles = 340;
+        endDot();
+        cycles = 0;
+        dotsleft -= 341 - start;
+        return clocked;
+    }
+
+    /**
+     * Works out which sprite pixel, if any, shows up at each x on this line.
+     * Leaves the sprite registers alone, see shiftSprites.
+     */
+    private void fillSpriteLine() {
+        fill(spriteline, 0);
+        //lower slots win, so they get drawn last
+        for (int y = found - 1; y >= 0; --y) {
+            int reg = spriteshiftreg[y];
+            for (int x = spriteXlatch[y]; x <= spriteXlatch[y] + 8 && x < 256; ++x) {
+                final int sprpxl = reg & 3;
+                if (sprpxl != 0) {
+                    spriteline[x] = (y << 2) | sprpxl;
+                }
+                reg >>= 2;
+            }
+        }
+    }
+
+    /**
+     * Shifts the sprite registers as far as drawing pixels 0 to pixels - 1
+     * one at a time would have.
+     */
+    private void shiftSprites(final int pixels) {
+        for (int y = found - 1; y >= 0; --y) {
+            final int shifts = Math.min(pixels - spriteXlatch[y], 9);
+            if (shifts > 0) {
+                spriteshiftreg[y] >>= shifts * 2;
+            }
+        }
+    }
+
+    private void flushSpriteLine() {
+        //done with the line buffer, bring the registers up to where it got to
+        if (spritelinex > 0) {
+            shiftSprites(spritelinex);
+        }
+        spritelinex = -1;
+    }
+
+    /**
+     * Last part of a PPU clock cycle, after the CPU has run.
+     */
+    private void endDot() {
         if (cycles == 257) {
             mapper.notifyscanline(scanline);
         } else if (cycles == 340) {
+            if (scanline < 240 && drawing) {
+                checkLine(scanline);
+            }
             scanline = (scanline + 1) % numscanlines;
             if (scanline == 0) {
                 ++framecount;
@@ -516,12 +971,24 @@ public class PPU {
         }
     }
 
+    private void checkLine(final int line) {
+        final int start = line << 8;
+        boolean changed = bgcolors[line] != lastbgcolors[line];
+        for (int i = start; !changed && i < start + 256; ++i) {
+            changed = bitmap[i] != lastbitmap[i];
+        }
+        if (changed) {
+            System.arraycopy(bitmap, start, lastbitmap, start, 256);
+            lastbgcolors[line] = bgcolors[line];
+            ++lineversions[line];
+        }
+    }
+
     private void bgFetch() {
         //fetch tiles for background
         //on real PPU this logic is repurposed for sprite fetches as well
         //System.err.println(hex(loopyV));
-        bgAttrShiftRegH |= ((nextattr >> 1) & 1);
-        bgAttrShiftRegL |= (nextattr & 1);
+        bgAttrShiftReg |= nextattr;
         //background fetches
         switch ((cycles - 1) & 7) {
             case 1:
@@ -535,15 +1002,11 @@ public class PPU {
                 break;
             case 5:
                 //fetch low bg byte
-                linelowbits = mapper.ppuRead((tileAddr)
-                        + ((loopyV & 0x7000) >> 12));
+                linelowbits = fetchBGLow();
                 break;
             case 7:
                 //fetch high bg byte
-                linehighbits = mapper.ppuRead((tileAddr) + 8
-                        + ((loopyV & 0x7000) >> 12));
-                bgShiftRegL |= linelowbits;
-                bgShiftRegH |= linehighbits;
+                bgShiftReg |= linelowbits | fetchBGHigh();
                 nextattr = penultimateattr;
                 if (cycles != 256) {
                     incLoopyVHoriz();
@@ -594,11 +1057,39 @@ public class PPU {
 
     private void fetchNTByte() {
         //fetch nt byte
-        tileAddr = mapper.ppuRead(
+        tileAddr = readVRAM(
                 ((loopyV & 0xc00) | 0x2000) + (loopyV & 0x3ff)) * 16
                 + (bgpattern ? 0x1000 : 0);
     }
 
+    private int readVRAM(final int addr) {
+        //straight from the page table if the mapper put the page there
+        final byte[] page = vrampages[addr >> 10];
+        if (page != null) {
+            return page[vramoffsets[addr >> 10] + (addr & 0x3ff)] & 0xff;
+        }
+        return ppuRead(addr);
+    }
+
+    private int fetchBGLow() {
+        //the low plane bits of the current row, spread out to 2 bit pixels
+        final int addr = tileAddr + ((loopyV & 0x7000) >> 12);
+        if (decodedchr) {
+            return mapper.getChrRow(addr) & 0x5555;
+        }
+        return utils.interleave(ppuRead(addr), 0);
+    }
+
+    private int fetchBGHigh() {
+        //looked up again rather than kept from fetchBGLow, since the CPU can
+        //change the address or the chr in between
+        final int addr = tileAddr + ((loopyV & 0x7000) >> 12);
+        if (decodedchr) {
+            return mapper.getChrRow(addr) & 0xaaaa;
+        }
+        return utils.interleave(0, ppuRead(addr + 8));
+    }
+
     private boolean drawBGPixel(int bufferoffset) {
         //background drawing
         //loopyX picks bits
@@ -606,25 +1097,25 @@ public class PPU {
         if (bgClip && (bufferoffset & 0xff) < 8) {
             //left hand of screen clipping
             //(needs to be marked as BG and not cause a sprite hit)
-            bitmap[bufferoffset] = pal[0];
+            if (drawing) {
+                bitmap[bufferoffset] = pal[0];
+            }
             isBG = true;
         } else {
-            final int bgPix = (((bgShiftRegH >> -loopyX + 16) & 1) << 1)
-                    + ((bgShiftRegL >> -loopyX + 16) & 1);
-            final int bgPal = (((bgAttrShiftRegH >> -loopyX + 8) & 1) << 1)
-                    + ((bgAttrShiftRegL >> -loopyX + 8) & 1);
+            final int bgPix = (int) (bgShiftReg >> (-loopyX + 16) * 2) & 3;
             isBG = (bgPix == 0);
-            bitmap[bufferoffset] = isBG ? pal[0] : pal[(bgPal << 2) + bgPix];
+            if (drawing) {
+                final int bgPal = (bgAttrShiftReg >> (-loopyX + 8) * 2) & 3;
+                bitmap[bufferoffset] = isBG ? pal[0] : pal[(bgPal << 2) + bgPix];
+            }
         }
         bgShiftClock();
         return isBG;
     }
 
     private void bgShiftClock() {
-        bgShiftRegH <<= 1;
-        bgShiftRegL <<= 1;
-        bgAttrShiftRegH <<= 1;
-        bgAttrShiftRegL <<= 1;
+        bgShiftReg <<= 2;
+        bgAttrShiftReg <<= 2;
     }
 
     boolean dotcrawl = true;
@@ -634,69 +1125,106 @@ public class PPU {
      * evaluates PPU sprites for the NEXT scanline
      */
     private void evalSprites() {
+        flushSpriteLine();
         sprite0here = false;
-        int ypos, offset;
         found = 0;
         Arrays.fill(secOAM, 0xff);
         //primary evaluation
         //need to emulate behavior when OAM address is set to nonzero here
-        for (int spritestart = oamstart; spritestart < 255; spritestart += 4) {
-            //for each sprite, first we cull the non-visible ones
-            ypos = OAM[spritestart];
-            offset = scanline - ypos;
-            if (ypos > scanline || offset > (spritesize ? 15 : 7)) {
-                //sprite is out of range vertically
-                continue;
-            }
-            //if we're here it's a valid renderable sprite
-            if (spritestart == 0) {
-                sprite0here = true;
-            }
-            //actually which sprite is flagged for sprite 0 depends on the starting
-            //oam address which is, on the real thing, not necessarily zero.
-            if (found >= 8) {
-                //if more than 8 sprites, set overflow bit and STOP looking
-                //todo: add "no sprite limit" option back
-                spriteoverflow = true;
-                break; //also the real PPU does strange stuff on sprite overflow
-                //todo: emulate register trashing that happens when overflow
-            } else {
-                //set up ye sprite for rendering
-                secOAM[found * 4] = OAM[spritestart];
-//                secOAM[found * 4 + 1] = OAM[spritestart + 1];
-//                secOAM[found * 4 + 2] = OAM[spritestart + 2];
-//                secOAM[found * 4 + 3] = OAM[spritestart + 3];
-                final int oamextra = OAM[spritestart + 2];
-
-                //bg flag
-                spritebgflags[found] = ((oamextra & (utils.BIT5)) != 0);
-                //x value
-                spriteXlatch[found] = OAM[spritestart + 3];
-                spritepals[found] = ((oamextra & 3) + 4) * 4;
-                if (((oamextra & (utils.BIT7)) != 0)) {
-                    //if sprite is flipped vertically, reverse the offset
-                    offset = (spritesize ? 15 : 7) - offset;
+        if ((oamstart & 3) != 0) {
+            //y positions come from the wrong byte of each sprite, so the
+            //buckets are no use
+            for (int spritestart = oamstart; spritestart < 255; spritestart += 4) {
+                if (!evalSprite(spritestart)) {
+                    break;
                 }
-                //now correction for the fact that 8x16 tiles are 2 separate tiles
-                if (offset > 7) {
-                    offset += 8;
+            }
+        } else if (scanline < bucketsizes.length) {
+            if (bucketsdirty) {
+                fillBuckets();
+            }
+            final int[] bucket = spritebuckets[scanline];
+            for (int i = 0; i < bucketsizes[scanline]; ++i) {
+                if (bucket[i] >= oamstart && !evalSprite(bucket[i])) {
+                    break;
                 }
-                //get tile address (8x16 sprites can use both pattern tbl pages but only the even tiles)
-                final int tilenum = OAM[spritestart + 1];
-                spriteFetch(spritesize, tilenum, offset, oamextra);
-                ++found;
             }
         }
         for (int i = found; i < 8; ++i) {
             //fill unused sprite registers with zeros
-            spriteshiftregL[found] = 0;
-            spriteshiftregH[found] = 0;
+            spriteshiftreg[found] = 0;
             //also, we need to do 8 reads no matter how many sprites we found
             //dummy reads are to sprite 0xff
             spriteFetch(spritesize, 0xff, 0, 0);
         }
     }
 
+    private void fillBuckets() {
+        fill(bucketsizes, 0);
+        final int height = spritesize ? 16 : 8;
+        for (int spritestart = 0; spritestart < 256; spritestart += 4) {
+            final int ypos = OAM[spritestart] & 0xff;
+            for (int line = ypos; line < ypos + height; ++line) {
+                spritebuckets[line][bucketsizes[line]++] = spritestart;
+            }
+        }
+        bucketsdirty = false;
+    }
+
+    /**
+     * Evaluates one sprite for the next scanline.
+     *
+     * @return false if evaluation has to stop here because of sprite overflow
+     */
+    private boolean evalSprite(final int spritestart) {
+        //for each sprite, first we cull the non-visible ones
+        final int ypos = OAM[spritestart] & 0xff;
+        int offset = scanline - ypos;
+        if (ypos > scanline || offset > (spritesize ? 15 : 7)) {
+            //sprite is out of range vertically
+            return true;
+        }
+        //if we're here it's a valid renderable sprite
+        if (spritestart == 0) {
+            sprite0here = true;
+        }
+        //actually which sprite is flagged for sprite 0 depends on the starting
+        //oam address which is, on the real thing, not necessarily zero.
+        if (found >= 8) {
+            //if more than 8 sprites, set overflow bit and STOP looking
+            //todo: add "no sprite limit" option back
+            spriteoverflow = true;
+            return false; //also the real PPU does strange stuff on sprite overflow
+            //todo: emulate register trashing that happens when overflow
+        } else {
+            //set up ye sprite for rendering
+            secOAM[found * 4] = OAM[spritestart] & 0xff;
+//                secOAM[found * 4 + 1] = OAM[spritestart + 1];
+//                secOAM[found * 4 + 2] = OAM[spritestart + 2];
+//                secOAM[found * 4 + 3] = OAM[spritestart + 3];
+            final int oamextra = OAM[spritestart + 2] & 0xff;
+
+            //bg flag
+            spritebgflags[found] = ((oamextra & (utils.BIT5)) != 0);
+            //x value
+            spriteXlatch[found] = OAM[spritestart + 3] & 0xff;
+            spritepals[found] = ((oamextra & 3) + 4) * 4;
+            if (((oamextra & (utils.BIT7)) != 0)) {
+                //if sprite is flipped vertically, reverse the offset
+                offset = (spritesize ? 15 : 7) - offset;
+            }
+            //now correction for the fact that 8x16 tiles are 2 separate tiles
+            if (offset > 7) {
+                offset += 8;
+            }
+            //get tile address (8x16 sprites can use both pattern tbl pages but only the even tiles)
+            final int tilenum = OAM[spritestart + 1] & 0xff;
+            spriteFetch(spritesize, tilenum, offset, oamextra);
+            ++found;
+            return true;
+        }
+    }
+
     private void spriteFetch(final boolean spritesize, final int tilenum, int offset, final int oamextra) {
         int tilefetched;
         if (spritesize) {
@@ -708,13 +1236,18 @@ public class PPU {
         }
         tilefetched += offset;
         //now load up the shift registers for said sprite
+        //pixels are shifted out from the bottom, so unflipped sprites need
+        //the row the other way around
         final boolean hflip = ((oamextra & (utils.BIT6)) != 0);
-        if (!hflip) {
-            spriteshiftregL[found] = reverseByte(mapper.ppuRead(tilefetched));
-            spriteshiftregH[found] = reverseByte(mapper.ppuRead(tilefetched + 8));
+        if (decodedchr) {
+            final int row = mapper.getChrRow(tilefetched);
+            spriteshiftreg[found] = hflip ? row & 0xffff : row >>> 16;
+        } else if (!hflip) {
+            final int low = reverseByte(ppuRead(tilefetched));
+            spriteshiftreg[found] = utils.interleave(low, reverseByte(ppuRead(tilefetched + 8)));
         } else {
-            spriteshiftregL[found] = mapper.ppuRead(tilefetched);
-            spriteshiftregH[found] = mapper.ppuRead(tilefetched + 8);
+            final int low = ppuRead(tilefetched);
+            spriteshiftreg[found] = utils.interleave(low, ppuRead(tilefetched + 8));
         }
     }
 
@@ -722,21 +1255,45 @@ public class PPU {
      * draws appropriate pixel of the sprites selected by sprite evaluation
      */
     private void drawSprites(int line, int x, boolean bgflag) {
-        final int startdraw = !spriteClip ? 0 : 8;//sprite left 8 pixels clip
+        if (x == 0) {
+            //nothing can change the sprite registers until the next
+            //evaluation, so work out the whole line at once
+            flushSpriteLine();
+            fillSpriteLine();
+            spritelinex = 0;
+        }
+        if (x == spritelinex) {
+            drawSpritePixel(line, x, spriteline[x], bgflag);
+            ++spritelinex;
+            return;
+        }
+        //some pixels weren't drawn, so the line buffer is off from here on
+        flushSpriteLine();
         int sprpxl = 0;
         int index = 7;
         //check all the used sprite slots to see if any sprite covers this pixel
         for (int y = found - 1; y >= 0; --y) {
             int off = x - spriteXlatch[y];
             if (off >= 0 && off <= 8) {
-                if ((spriteshiftregH[y] & 1) + (spriteshiftregL[y] & 1) != 0) {
+                if ((spriteshiftreg[y] & 3) != 0) {
                     index = y;
-                    sprpxl = 2 * (spriteshiftregH[y] & 1) + (spriteshiftregL[y] & 1);
+                    sprpxl = spriteshiftreg[y] & 3;
                 }
-                spriteshiftregH[y] >>= 1;
-                spriteshiftregL[y] >>= 1;
+                spriteshiftreg[y] >>= 2;
             }
         }
+        drawSpritePixel(line, x, (index << 2) | sprpxl, bgflag);
+    }
+
+    /**
+     * Draws a sprite pixel over the background pixel that's already there.
+     *
+     * @param spr sprite slot << 2 | color of the pixel, color 0 is transparent
+     */
+    private void drawSpritePixel(int line, int x, int spr, boolean bgflag) {
+        final int startdraw = !spriteClip ? 0 : 8;//sprite left 8 pixels clip
+        final int sprpxl = spr & 3;
+        final int index = spr >> 2;
         if (sprpxl == 0 || x < startdraw || !spritesOn) {
             //no opaque sprite pixel here
             return;
@@ -748,7 +1305,7 @@ public class PPU {
             sprite0hit = true;
         }
         //now, FINALLY, drawing.
-        if (!spritebgflags[index] || bgflag) {
+        if (drawing && (!spritebgflags[index] || bgflag)) {
             bitmap[(line << 8) + x] = pal[spritepals[index] + sprpxl];
         }
     }
@@ -764,7 +1321,7 @@ public class PPU {
      * @return attribute table value (0-3)
      */
     private int getAttribute(final int ntstart, final int tileX, final int tileY) {
-        final int base = mapper.ppuRead(ntstart + (tileX >> 2) + 8 * (tileY >> 2));
+        final int base = readVRAM(ntstart + (tileX >> 2) + 8 * (tileY >> 2));
         if (((tileY & (utils.BIT1)) != 0)) {
             if (((tileX & (utils.BIT1)) != 0)) {
                 return (base >> 6) & 3;
@@ -863,10 +1420,10 @@ public class PPU {
      * @param gui the GUI window to render to
      */
     public final void renderFrame(GUIInterface gui) {
-        if (PPUDEBUG) {
+        if (ppudebug) {
             debugDraw();
         }
-        if (gui != null) {
+        if (gui != null && drawing) {
             gui.setFrame(bitmap, bgcolors, dotcrawl);
         }
 
@@ -0,0 +1,108 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A ROM file as read from disk, shared by every NES instance that loads the
+ * same file. Images are cached by the CRC of their contents, so identical ROMs
+ * at different paths also end up sharing one copy. The cache only holds weak
+ * references: an image stays around as long as some loader (and so some
+ * running mapper) still uses it.
+ *
+ * Nothing handed out by an image may be written to. Mappers that need to
+ * write to what they loaded have to make their own copy first.
+ */
+public final class ROMImage {
+
+    private static final Map<Long, WeakReference<ROMImage>> bycrc = new HashMap<>();
+    private static final Map<String, WeakReference<ROMImage>> byfile = new HashMap<>();
+    private final byte[] data;
+    private final long crc;
+    //slices already cut out of the image for mappers, by offset and size
+    private final Map<Long, byte[]> slices = new HashMap<>();
+
+    private ROMImage(final byte[] data, final long crc) {
+        this.data = data;
+        this.crc = crc;
+    }
+
+    /**
+     * Returns the image for a ROM file, only reading it from disk if there
+     * isn't one for it in the cache already.
+     */
+    public static ROMImage get(final String filename) {
+        final File f = new File(filename);
+        //files that haven't changed on disk since last time don't need to be read
+        //again just to work out their crc
+        final String key = f.getAbsolutePath() + '|' + f.length() + '|' + f.lastModified();
+        synchronized (ROMImage.class) {
+            final ROMImage cached = deref(byfile.get(key));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final byte[] data = FileUtils.readfromfile(filename);
+        final CRC32 c = new CRC32();
+        c.update(data);
+        synchronized (ROMImage.class) {
+            ROMImage image = deref(bycrc.get(c.getValue()));
+            if (image == null) {
+                image = new ROMImage(data, c.getValue());
+                purge(bycrc);
+                bycrc.put(image.crc, new WeakReference<>(image));
+            }
+            purge(byfile);
+            byfile.put(key, new WeakReference<>(image));
+            return image;
+        }
+    }
+
+    private static ROMImage deref(final WeakReference<ROMImage> ref) {
+        return (ref == null) ? null : ref.get();
+    }
+
+    private static <K> void purge(final Map<K, WeakReference<ROMImage>> map) {
+        final Iterator<WeakReference<ROMImage>> i = map.values().iterator();
+        while (i.hasNext()) {
+            if (i.next().get() == null) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns size bytes of the image starting at offset. Every caller asking
+     * for the same range gets the same array, so it must never be modified.
+     */
+    public synchronized byte[] slice(final int offset, final int size) {
+        final long key = ((long) offset << 32) | size;
+        byte[] slice = slices.get(key);
+        if (slice == null) {
+            slice = new byte[size];
+            System.arraycopy(data, offset, slice, 0, size);
+            slices.put(key, slice);
+        }
+        return slice;
+    }
+
+    public int get(final int addr) {
+        return data[addr] & 0xff;
+    }
+
+    public int length() {
+        return data.length;
+    }
+
+    public long crc() {
+        return crc;
+    }
+}
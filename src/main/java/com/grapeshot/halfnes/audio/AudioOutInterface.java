@@ -21,4 +21,13 @@ public interface AudioOutInterface {
     public void destroy();
 
     public boolean bufferHasLessThan(int samples);
+
+    /**
+     * Returns how full the output buffer is compared to its latency target:
+     * 1 is on target, less is running dry, more is behind. Outputs without
+     * a buffer of their own are always on target.
+     */
+    public default double bufferFill() {
+        return 1;
+    }
 }
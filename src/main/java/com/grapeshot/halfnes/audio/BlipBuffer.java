@@ -0,0 +1,123 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes.audio;
+
+import java.util.Arrays;
+
+/**
+ * Turns a level that changes at CPU cycle timestamps into samples without
+ * aliasing. Instead of working out the level at every cycle and averaging,
+ * each change of the level is added in as a band limited step: a short
+ * windowed sinc impulse, picked from a table by where between two samples the
+ * change happened, goes into a buffer of differences, and the samples are the
+ * running sum of that buffer. So the cost only depends on how often the level
+ * changes, not on how many cycles there are.
+ *
+ * Times are in cycles since the start of the frame, endFrame starts the next
+ * one. Output is delayed by half the impulse width.
+ */
+public class BlipBuffer {
+
+    //impulse length in samples, and how many sub-sample positions it has
+    private final static int WIDTH = 16, PHASES = 32;
+    //impulse taps are fixed point with this many fraction bits
+    private final static int BITS = 15;
+    //passband edge, as a fraction of the sample rate
+    private final static double CUTOFF = 0.45;
+    private final static int[][] impulses = genImpulses();
+    private final long[] buf;
+    private final double samplespercycle;
+    //position of cycle 0 of this frame, in samples from the buffer start
+    private double offset = 0;
+    private long integrator = 0;
+
+    /**
+     * @param cyclespersample how many CPU cycles each output sample lasts
+     * @param maxcycles the longest a frame can run for
+     */
+    public BlipBuffer(double cyclespersample, int maxcycles) {
+        samplespercycle = 1 / cyclespersample;
+        buf = new long[(int) (maxcycles * samplespercycle) + WIDTH + 2];
+    }
+
+    private static int[][] genImpulses() {
+        final int[][] tbl = new int[PHASES][WIDTH];
+        final double[] taps = new double[WIDTH];
+        for (int p = 0; p < PHASES; ++p) {
+            //centered so phase PHASES/2 is symmetric around the middle
+            final double frac = (p + 0.5) / PHASES;
+            double sum = 0;
+            for (int k = 0; k < WIDTH; ++k) {
+                final double x = k - (WIDTH - 1) / 2. - (frac - 0.5);
+                final double sinc = (x == 0) ? 1
+                        : Math.sin(Math.PI * 2 * CUTOFF * x) / (Math.PI * 2 * CUTOFF * x);
+                //blackman window over the whole width
+                final double w = 0.42 + 0.5 * Math.cos(Math.PI * x / (WIDTH / 2.))
+                        + 0.08 * Math.cos(2 * Math.PI * x / (WIDTH / 2.));
+                taps[k] = sinc * Math.max(w, 0);
+                sum += taps[k];
+            }
+            //every impulse has to add up to exactly 1, or the level drifts
+            int total = 0, biggest = 0;
+            for (int k = 0; k < WIDTH; ++k) {
+                tbl[p][k] = (int) Math.round(taps[k] / sum * (1 << BITS));
+                total += tbl[p][k];
+                if (tbl[p][k] > tbl[p][biggest]) {
+                    biggest = k;
+                }
+            }
+            tbl[p][biggest] += (1 << BITS) - total;
+        }
+        return tbl;
+    }
+
+    /**
+     * Adds a change of the level at the given cycle of this frame.
+     */
+    public void addDelta(final int cycle, final int delta) {
+        final double pos = offset + cycle * samplespercycle;
+        final int i = (int) pos;
+        final int[] impulse = impulses[(int) ((pos - i) * PHASES)];
+        for (int k = 0; k < WIDTH; ++k) {
+            buf[i + k] += (long) delta * impulse[k];
+        }
+    }
+
+    /**
+     * Ends the frame at the given cycle. Every sample from before then is
+     * finished, so they're written to out and the time starts over at 0.
+     *
+     * @return how many samples were written
+     */
+    public int endFrame(final int cycles, final int[] out) {
+        final double end = offset + cycles * samplespercycle;
+        final int count = (int) end;
+        offset = end - count;
+        for (int i = 0; i < count; ++i) {
+            integrator += buf[i];
+            out[i] = (int) (integrator >> BITS);
+        }
+        //the tail of the last impulses goes into the next frame
+        System.arraycopy(buf, count, buf, 0, WIDTH);
+        Arrays.fill(buf, WIDTH, count + WIDTH, 0);
+        return count;
+    }
+
+    /**
+     * How many samples endFrame can write at most.
+     */
+    public int maxSamples() {
+        return buf.length;
+    }
+
+    /**
+     * Throws away everything, the level starts over at 0.
+     */
+    public void clear() {
+        Arrays.fill(buf, 0);
+        integrator = 0;
+        offset = 0;
+    }
+}
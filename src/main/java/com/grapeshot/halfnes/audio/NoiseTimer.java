@@ -64,6 +64,16 @@ public class NoiseTimer extends Timer {
         divider -= (period + periodadd) * periods;
     }
 
+    @Override
+    public final void advance(final int cycles) {
+        clock(cycles);
+    }
+
+    @Override
+    public final int cyclesToStep() {
+        return (period == 0) ? Integer.MAX_VALUE : Math.max(1, -divider);
+    }
+
     @Override
     public final void setperiod(final int newperiod) {
         period = newperiod;
@@ -92,4 +92,13 @@ public class Reverberator implements AudioOutInterface {
             return false;
         }
     }
+
+    @Override
+    public double bufferFill() {
+        if (!(iface == null)) {
+            return iface.bufferFill();
+        } else {
+            return 1;
+        }
+    }
 }
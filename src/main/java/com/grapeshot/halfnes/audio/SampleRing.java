@@ -0,0 +1,90 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size FIFO of 16 bit samples between exactly one thread writing and
+ * one other thread reading, without locks. Each side only ever moves its own
+ * counter, and publishes it with an ordered write after the samples are
+ * copied, so the other side never sees a sample before it's there. Neither
+ * side blocks: a write takes as many samples as there's room for and a read
+ * as many as there are.
+ */
+public final class SampleRing {
+
+    private final short[] buffer;
+    private final int mask;
+    //total samples ever read and written, only moved by their own side
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    //each side's last look at the other one's counter, so it only has to
+    //read it again when it looks like it's out of room or samples
+    private long writerhead = 0, readertail = 0;
+
+    /**
+     * @param capacity how many samples it holds, rounded up to a power of two
+     */
+    public SampleRing(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new short[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * How many samples are waiting to be read. Either side can ask, from
+     * anywhere else it's only a rough idea.
+     */
+    public int size() {
+        //head first, the tail can only be further along by the time it's read
+        final long h = head.get();
+        return (int) (tail.get() - h);
+    }
+
+    /**
+     * Writer side: copies in as many of the samples as fit.
+     *
+     * @return how many were written
+     */
+    public int write(final short[] src, final int offset, final int length) {
+        final long t = tail.get();
+        if (buffer.length - (t - writerhead) < length) {
+            writerhead = head.get();
+        }
+        final int n = Math.min(length, buffer.length - (int) (t - writerhead));
+        final int at = (int) t & mask;
+        final int first = Math.min(n, buffer.length - at);
+        System.arraycopy(src, offset, buffer, at, first);
+        System.arraycopy(src, offset + first, buffer, 0, n - first);
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    /**
+     * Reader side: copies out as many samples as there are, up to length.
+     *
+     * @return how many were read
+     */
+    public int read(final short[] dest, final int offset, final int length) {
+        final long h = head.get();
+        if (readertail - h < length) {
+            readertail = tail.get();
+        }
+        final int n = Math.min(length, (int) (readertail - h));
+        final int at = (int) h & mask;
+        final int first = Math.min(n, buffer.length - at);
+        System.arraycopy(buffer, at, dest, offset, first);
+        System.arraycopy(buffer, 0, dest, offset + first, n - first);
+        head.lazySet(h + n);
+        return n;
+    }
+}
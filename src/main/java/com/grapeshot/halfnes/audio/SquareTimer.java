@@ -44,6 +44,29 @@ public class SquareTimer extends Timer {
         divider -= (period + periodadd) * periods;
     }
 
+    @Override
+    public final void advance(final int cycles) {
+        //like clock(cycles), but keeps going at periods under 8 like clock()
+        if (period + periodadd <= 0) {
+            return;
+        }
+        divider += cycles;
+        int periods = (divider + period + periodadd) / (period + periodadd);
+        if (periods < 0) {
+            periods = 0;
+        }
+        position = (position + periods) % values.length;
+        divider -= (period + periodadd) * periods;
+    }
+
+    @Override
+    public final int cyclesToStep() {
+        if (period + periodadd <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(1, -divider);
+    }
+
     public SquareTimer(final int ctrlen, final int periodadd) {
         this.periodadd = periodadd;
         values = new int[ctrlen];
@@ -5,9 +5,9 @@
 package com.grapeshot.halfnes.audio;
 
 import com.grapeshot.halfnes.NES;
-import com.grapeshot.halfnes.PrefsSingleton;
 import com.grapeshot.halfnes.mappers.Mapper;
 
+import java.util.concurrent.locks.LockSupport;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
@@ -21,8 +21,18 @@ public class SwingAudioImpl implements AudioOutInterface {
 
     private boolean soundEnable;
     private SourceDataLine sdl;
-    private volatile byte[] audiobuf;
-    private volatile int bufptr = 0;
+    //samples go from the emulation thread through the ring to a thread of
+    //their own that does the blocking writes to the line
+    private SampleRing ring;
+    private short[] framebuf;
+    private int bufptr = 0;
+    //set when the frame ran past the end of framebuf and lost samples
+    private boolean framefull = false;
+    private Thread player;
+    private volatile boolean running;
+    //how many samples to keep queued between the ring and the line
+    private int targetSamples;
+    private volatile long underruns = 0, overruns = 0;
     protected float outputvol;
     protected int samplesPerFrame;
 
@@ -32,8 +42,8 @@ public class SwingAudioImpl implements AudioOutInterface {
 
 
     public SwingAudioImpl(final NES nes, final int samplerate, Mapper.TVType tvtype) {
-        soundEnable = PrefsSingleton.get().getBoolean("soundEnable", true);
-        outputvol = (float) (PrefsSingleton.get().getInt("outputvol", 13107) / 16384.);
+        soundEnable = nes.getConfig().isSoundEnable();
+        outputvol = (float) (nes.getConfig().getOutputVolume() / 16384.);
         double fps;
         switch (tvtype) {
             case NTSC:
@@ -47,7 +57,8 @@ public class SwingAudioImpl implements AudioOutInterface {
         }
         if (soundEnable) {
             samplesPerFrame = (int) Math.ceil((samplerate * CHANNELS) / fps);
-            audiobuf = new byte[samplesPerFrame * BYTES_PER_SAMPLE];
+            //room for a frame that runs long
+            framebuf = new short[samplesPerFrame * 2];
             try {
                 AudioFormat af = new AudioFormat(
                         samplerate,
@@ -59,8 +70,18 @@ public class SwingAudioImpl implements AudioOutInterface {
                 );
                 sdl = AudioSystem.getSourceDataLine(af);
                 sdl.open(af, samplesPerFrame * 2 * CHANNELS * BYTES_PER_SAMPLE);
-                //create 4 frame audio buffer
+                //the line holds 2 frames, the ring whatever else the latency
+                //target asks for, but at least another frame
+                targetSamples = Math.max(
+                        nes.getConfig().getAudioLatency() * samplerate * CHANNELS / 1000,
+                        samplesPerFrame * 3);
+                ring = new SampleRing(targetSamples * 2);
                 sdl.start();
+                running = true;
+                player = new Thread(this::play, "Audio output");
+                player.setDaemon(true);
+                player.setPriority(Thread.MAX_PRIORITY);
+                player.start();
             } catch (LineUnavailableException a) {
                 System.err.println(a);
                 nes.messageBox("Unable to inintialize sound.");
@@ -73,32 +94,68 @@ public class SwingAudioImpl implements AudioOutInterface {
         }
     }
 
+    private void play() {
+        //the audio thread. Moves samples from the ring to the line a quarter
+        //frame at a time, the write blocks until the line has room for them.
+        final short[] samples = new short[Math.max(samplesPerFrame / 4, 1)];
+        final byte[] bytes = new byte[samples.length * BYTES_PER_SAMPLE];
+        boolean playing = false;
+        while (running) {
+            final int n = ring.read(samples, 0, samples.length);
+            if (n == 0) {
+                //nothing new, and once the line has played out what it had
+                //as well that's an underrun. Counted once until sound comes back.
+                if (playing && sdl.available() >= sdl.getBufferSize()) {
+                    ++underruns;
+                    playing = false;
+                }
+                LockSupport.parkNanos(this, 1000000);
+                continue;
+            }
+            playing = true;
+            for (int i = 0; i < n; ++i) {
+                //mono
+                bytes[2 * i] = (byte) (samples[i] & 0xff);
+                bytes[2 * i + 1] = (byte) ((samples[i] >> 8) & 0xff);
+            }
+            sdl.write(bytes, 0, n * BYTES_PER_SAMPLE);
+        }
+    }
+
+    private int queued() {
+        return ring.size() + (sdl.getBufferSize() - sdl.available()) / BYTES_PER_SAMPLE;
+    }
+
     @Override
     public void flushFrame(final boolean waitIfBufferFull) {
         if (soundEnable) {
-
-//            if (sdl.available() == sdl.getBufferSize()) {
-//                System.err.println("Audio is underrun");
-//            }
-            if (sdl.available() < bufptr) {
-//                System.err.println("Audio is blocking");
-                if (waitIfBufferFull) {
-
-                    //write to audio buffer and don't worry if it blocks
-                    sdl.write(audiobuf, 0, bufptr);
+            if (waitIfBufferFull) {
+                //hold the queue to the latency target, this is what keeps
+                //time when the frame limiter isn't sleeping. Gives up after
+                //a while in case the line is stopped.
+                final long giveup = System.nanoTime() + 100000000;
+                while (queued() > targetSamples && System.nanoTime() < giveup) {
+                    LockSupport.parkNanos(this, 500000);
                 }
-                //else don't bother to write if the buffer is full
-            } else {
-                sdl.write(audiobuf, 0, bufptr);
+            }
+            if (ring.write(framebuf, 0, bufptr) < bufptr || framefull) {
+                //the ring had no room for the rest of the frame, or framebuf
+                //didn't, either way some of it is lost
+                ++overruns;
             }
         }
         bufptr = 0;
+        framefull = false;
 
     }
 
     @Override
     public void outputSample(int sample) {
         if (soundEnable) {
+            if (bufptr >= framebuf.length) {
+                framefull = true;
+                return;
+            }
             sample *= outputvol;
             if (sample < -32768) {
                 sample = -32768;
@@ -108,10 +165,7 @@ public class SwingAudioImpl implements AudioOutInterface {
                 sample = 32767;
                 //System.err.println("clop");
             }
-            //mono
-            audiobuf[bufptr] = (byte) (sample & 0xff);
-            audiobuf[bufptr + 1] = (byte) ((sample >> 8) & 0xff);
-            bufptr += 2;
+            framebuf[bufptr++] = (short) sample;
         }
     }
 
@@ -133,6 +187,16 @@ public class SwingAudioImpl implements AudioOutInterface {
     @Override
     public final void destroy() {
         if (soundEnable) {
+            //the player has to be gone before the line is, it could be in
+            //the middle of a write. A write to a paused line never returns
+            //though, so don't wait forever, closing the line frees it then.
+            running = false;
+            player.interrupt();
+            try {
+                player.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             sdl.stop();
             sdl.close();
         }
@@ -140,6 +204,26 @@ public class SwingAudioImpl implements AudioOutInterface {
 
     public final boolean bufferHasLessThan(final int samples) {
         //returns true if the audio buffer has less than the specified amt of samples remaining in it
-        return (sdl == null) ? false : ((sdl.getBufferSize() - sdl.available()) <= samples);
+        return (sdl == null || !soundEnable) ? false : queued() <= samples;
+    }
+
+    @Override
+    public double bufferFill() {
+        return soundEnable ? queued() / (double) targetSamples : 1;
+    }
+
+    /**
+     * How many times the line has run dry since it was opened.
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * How many frames had samples dropped because the ring was full, or
+     * because the frame had more samples than there was room for.
+     */
+    public long getOverruns() {
+        return overruns;
     }
 }
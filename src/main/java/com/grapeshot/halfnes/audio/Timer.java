@@ -25,5 +25,16 @@ public abstract class Timer {
 
     public abstract void clock(final int cycles);
 
+    /**
+     * Same as calling clock() the given number of times.
+     */
+    public abstract void advance(final int cycles);
+
+    /**
+     * Returns how many calls to clock() it takes until the position moves,
+     * or Integer.MAX_VALUE if it doesn't move at all.
+     */
+    public abstract int cyclesToStep();
+
     public abstract int getval();
 }
@@ -56,6 +56,16 @@ public class TriangleTimer extends Timer {
         divider -= (period + periodadd) * periods;
     }
 
+    @Override
+    public final void advance(final int cycles) {
+        clock(cycles);
+    }
+
+    @Override
+    public final int cyclesToStep() {
+        return (period == 0) ? Integer.MAX_VALUE : Math.max(1, -divider);
+    }
+
     @Override
     public final int getval() {
         return (period == 0) ? 7 : triangle[position];
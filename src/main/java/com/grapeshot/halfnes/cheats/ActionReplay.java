@@ -17,6 +17,8 @@ public class ActionReplay {
     private final CPURAM cpuram;
     // Memory patches for Pro Action Replay codes
     private final HashMap<Integer, Patch> patches = new HashMap<>();
+    // set when the patches change so they get recompiled on the next frame
+    private boolean changed = false;
     // List of addresses for the "find code" feature
     private final List<Integer> foundAddresses = new ArrayList<>();
 
@@ -41,24 +43,30 @@ public class ActionReplay {
      * Add a memory patch. The patch is permanent (the value is constantly
      * written into memory until a new game is loaded).
      */
-    public void addMemoryPatch(Patch patch) {
+    public synchronized void addMemoryPatch(Patch patch) {
         if (!patches.containsKey(patch.getAddress())) {
             patches.put((Integer) patch.getAddress(), patch);
+            changed = true;
         }
     }
 
     /**
-     * Patches the memory with Pro Action Replay codes.
+     * Patches the memory with Pro Action Replay codes. Called once per frame;
+     * the patches are only compiled again if they changed since last time.
      */
-    public void applyPatches() {
-        cpuram.setPatches(patches);
+    public synchronized void applyPatches() {
+        if (changed) {
+            changed = false;
+            cpuram.setPatches(PatchTable.compile(patches.values()));
+        }
     }
 
     /**
      * Remove all the patches.
      */
-    public void clear() {
+    public synchronized void clear() {
         patches.clear();
+        changed = true;
     }
 
     /**
@@ -47,6 +47,20 @@ public class Patch {
         return data;
     }
 
+    /**
+     * Returns true if the patch only applies when memory holds the check value.
+     */
+    public boolean hasCheck() {
+        return type == 1;
+    }
+
+    /**
+     * Returns the value memory has to hold for the patch to apply.
+     */
+    public int getCheckData() {
+        return cmpData;
+    }
+
     /**
      * Returns true if the check matches the data or it's a code type that
      * doesn't check data bus
@@ -0,0 +1,73 @@
+package com.grapeshot.halfnes.cheats;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compiled form of a set of patches, laid out so the CPU can look one up on
+ * every read without hashing or boxing the address. Patches are grouped by 256
+ * byte page; pages with no patches on them are null, so reads from them only
+ * cost a null check. Once built a table is never modified, so it can be handed
+ * from the thread that edits the cheats to the one running the CPU.
+ */
+public final class PatchTable {
+
+    public static final PatchTable EMPTY = new PatchTable();
+    // marks an address with no patch, and a patch that doesn't compare
+    private static final int NONE = -1;
+    // one extra page for reads that run off the end of the address space,
+    // same as the CPU page table
+    private final int[][] data = new int[0x101][];
+    private final int[][] cmpData = new int[0x101][];
+
+    private PatchTable() {
+    }
+
+    /**
+     * Builds the table for the given patches. Addresses outside the CPU
+     * address space are dropped since no read could ever hit them.
+     */
+    public static PatchTable compile(Collection<Patch> patches) {
+        if (patches.isEmpty()) {
+            return EMPTY;
+        }
+        PatchTable table = new PatchTable();
+        for (Patch p : patches) {
+            final int addr = p.getAddress();
+            if (addr < 0 || addr > 0xffff) {
+                continue;
+            }
+            final int page = addr >> 8;
+            if (table.data[page] == null) {
+                table.data[page] = new int[256];
+                table.cmpData[page] = new int[256];
+                Arrays.fill(table.data[page], NONE);
+            }
+            table.data[page][addr & 0xff] = p.getData();
+            table.cmpData[page][addr & 0xff] = p.hasCheck() ? p.getCheckData() : NONE;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the per page patch data, indexed by page and then by the low
+     * byte of the address, with null for pages that have nothing patched.
+     */
+    public int[][] getPages() {
+        return data;
+    }
+
+    /**
+     * Applies the patch for an address on a page that has patches to the
+     * value that was read from memory.
+     */
+    public int apply(final int addr, final int value) {
+        final int off = addr & 0xff;
+        final int patched = data[addr >> 8][off];
+        if (patched == NONE) {
+            return value;
+        }
+        final int cmp = cmpData[addr >> 8][off];
+        return (cmp == NONE || cmp == value) ? patched : value;
+    }
+}
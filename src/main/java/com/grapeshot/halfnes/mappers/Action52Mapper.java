@@ -64,12 +64,21 @@ public class Action52Mapper extends Mapper {
         }
     }
 
+    @Override
+    protected void mapCPUPages() {
+        super.mapCPUPages();
+        //no prg ram
+        for (int page = 0x60; page < 0x80; ++page) {
+            cpuram.unmapPage(page);
+        }
+    }
+
     @Override
     public final int cartRead(final int addr) {
         // by default has wram at 0x6000 and cartridge at 0x8000-0xfff
         // but some mappers have different so override for those
         if (addr >= 0x8000) {
-            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)];
+            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)] & 0xff;
         } else if (addr < 0x6000) {
             return ram[addr & 3] & 0xf;
         }
@@ -71,17 +71,26 @@ public class AfterburnerMapper extends Mapper {
         }
     }
 
+    @Override
+    protected void mapPPUPages() {
+        super.mapPPUPages();
+        //nametables can be switched to chr rom, leave those to ppuRead
+        for (int page = 8; page < 16; ++page) {
+            unmapPPUPage(page);
+        }
+    }
+
     public int ppuRead(int addr) {
         if (addr < 0x2000) {
-            return chr[chr_map[addr >> 10] + (addr & 1023)];
+            return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
         } else {
             switch (addr & 0xc00) {
                 case 0:
-                    return (useromnt ? chr[(addr & 0x3ff) + (romnt1 * 1024)] : nt0[addr & 0x3ff]);
+                    return (useromnt ? chr[(addr & 0x3ff) + (romnt1 * 1024)] : nt0[addr & 0x3ff]) & 0xff;
                 case 0x400:
-                    return (useromnt ? chr[(addr & 0x3ff) + (romnt2 * 1024)] : nt1[addr & 0x3ff]);
+                    return (useromnt ? chr[(addr & 0x3ff) + (romnt2 * 1024)] : nt1[addr & 0x3ff]) & 0xff;
                 case 0x800:
-                    return (useromnt ? chr[(addr & 0x3ff) + (romnt2 * 1024)] : nt2[addr & 0x3ff]);
+                    return (useromnt ? chr[(addr & 0x3ff) + (romnt2 * 1024)] : nt2[addr & 0x3ff]) & 0xff;
                 case 0xc00:
                 default:
                     if (addr >= 0x3f00) {
@@ -91,7 +100,7 @@ public class AfterburnerMapper extends Mapper {
                         }
                         return ppu.pal[addr];
                     } else {
-                        return (useromnt ? chr[(addr & 0x3ff) + (romnt1 * 1024)] : nt3[addr & 0x3ff]);
+                        return (useromnt ? chr[(addr & 0x3ff) + (romnt1 * 1024)] : nt3[addr & 0x3ff]) & 0xff;
                     }
             }
         }
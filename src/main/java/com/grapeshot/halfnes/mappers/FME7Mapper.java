@@ -44,18 +44,26 @@ public class FME7Mapper extends Mapper {
         }
     }
 
+    @Override
+    protected void mapCPUPages() {
+        //0x6000-0x7fff can be switched between ram and rom so it stays on cartRead
+        for (int page = 0x80; page < 0x100; ++page) {
+            cpuram.mapPage(page, prg, prg_map[(page - 0x60) >> 2] + ((page & 3) << 8));
+        }
+    }
+
     @Override
     public final int cartRead(int addr) {
         //five possible rom banks.
         if (addr >= 0x6000) {
             if (addr < 0x8000 && ramSelect) {
                 if (ramEnable) {
-                    return prgram[addr - 0x6000];
+                    return prgram[addr - 0x6000] & 0xff;
                 } else {
                     return addr >> 8; //open bus
                 }
             }
-            return prg[prg_map[(addr - 0x6000) >> 10] + (addr & 1023)];
+            return prg[prg_map[(addr - 0x6000) >> 10] + (addr & 1023)] & 0xff;
         }
         return addr >> 8; //open bus
     }
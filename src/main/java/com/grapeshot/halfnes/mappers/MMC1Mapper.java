@@ -31,6 +31,12 @@ public class MMC1Mapper extends Mapper {
         setbanks();
     }
 
+    @Override
+    protected boolean plainPRGRAMWrites() {
+        //no registers below 0x8000
+        return true;
+    }
+
     @Override
     public final void cartWrite(final int addr, final int data) {
         if (addr < 0x8000 || addr > 0xffff) {
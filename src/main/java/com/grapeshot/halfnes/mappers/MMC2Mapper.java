@@ -60,6 +60,11 @@ public class MMC2Mapper extends Mapper {
         }
     }
 
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(final int addr) {
         int retval = super.ppuRead(addr);
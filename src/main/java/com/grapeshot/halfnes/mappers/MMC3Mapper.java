@@ -38,6 +38,12 @@ public class MMC3Mapper extends Mapper {
         //cpuram.setPrgRAMEnable(false);
     }
 
+    @Override
+    protected boolean plainPRGRAMWrites() {
+        //no registers below 0x8000
+        return true;
+    }
+
     @Override
     public void cartWrite(int addr, int data) {
         if (addr < 0x8000 || addr > 0xffff) {
@@ -146,6 +152,16 @@ public class MMC3Mapper extends Mapper {
 
     private boolean lastA12 = false;
 
+    @Override
+    public boolean isPPUClocked() {
+        return true;
+    }
+
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(int addr) {
         //note: to pass blargg's mmc3 tests the vram address is read
@@ -186,6 +202,15 @@ public class MMC3Mapper extends Mapper {
         lastA12 = a12;
     }
 
+    @Override
+    public void checkA12(int addr, int times) {
+        //only the first one can be an edge, the rest just count the timer down
+        if (times > 0) {
+            checkA12(addr);
+            a12timer -= times - 1;
+        }
+    }
+
     private void clockScanCounter() {
         if (irqreload || (irqctr == 0)) {
             //System.err.println(ppu.scanline + "reloading" + irqctrreload);
@@ -51,6 +51,11 @@ public class MMC4Mapper extends Mapper {
         }
     }
 
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(final int addr) {
         int retval = super.ppuRead(addr);
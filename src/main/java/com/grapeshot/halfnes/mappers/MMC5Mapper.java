@@ -15,7 +15,7 @@ import java.util.Arrays;
 public class MMC5Mapper extends Mapper {
 
     //the infamous kitchen sink mapper
-    final int[] exram = new int[1024];
+    final byte[] exram = new byte[1024];
     private int exramMode, chrMode, prgMode;
     private int wramWrite1, wramWrite2, multiplier1, multiplier2;
     private int prgpage, chrOr, wrambank;
@@ -26,7 +26,7 @@ public class MMC5Mapper extends Mapper {
     private final int[] chrmapB = new int[4];
     private final boolean[] romHere = new boolean[3];
     private int scanctrLine, irqCounter = 20;
-    private final int[] fillnt = new int[1024];
+    private final byte[] fillnt = new byte[1024];
     private MMC5SoundChip soundchip;
     private boolean inFrame = false;
 
@@ -45,7 +45,7 @@ public class MMC5Mapper extends Mapper {
         for (int i = 0; i < 8; ++i) {
             chr_map[i] = 1024 * i;
         }
-        prgram = new int[65536];
+        prgram = new byte[65536];
     }
 
     @Override
@@ -99,11 +99,11 @@ public class MMC5Mapper extends Mapper {
                     break;
                 case 0x5106:
                     //fill tile
-                    Arrays.fill(fillnt, 0, 32 * 30, data);
+                    Arrays.fill(fillnt, 0, 32 * 30, (byte) data);
                     break;
                 case 0x5107:
                     //fill attribute
-                    Arrays.fill(fillnt, 32 * 30, fillnt.length, data & 0x3 + (data & 3) << 2 + (data & 3) << 4 + (data & 3) << 6);
+                    Arrays.fill(fillnt, 32 * 30, fillnt.length, (byte) (data & 0x3 + (data & 3) << 2 + (data & 3) << 4 + (data & 3) << 6));
                     break;
                 case 0x5113:
                     //PRG RAM register
@@ -218,30 +218,35 @@ public class MMC5Mapper extends Mapper {
             }
         } else if (addr < 0x6000) {
             //exram
-            exram[addr - 0x5c00] = data;
+            exram[addr - 0x5c00] = (byte) data;
         } else if (addr < 0x8000) {
             final int wramaddr = wrambank * 8192 + (addr - 0x6000);
             //System.err.println("wrote wram " + utils.hex(wramaddr));
-            prgram[wramaddr] = data;
+            prgram[wramaddr] = (byte) data;
         } else if (addr < 0xA000 && !romHere[0] && prgMode == 3) {
             System.err.println("RAM write to 0x8000 area");
-            prgram[((prgregs[0] & 7) * 8192) + (addr - 0x8000)] = data;
+            prgram[((prgregs[0] & 7) * 8192) + (addr - 0x8000)] = (byte) data;
         } else if (addr < 0xC000 && !romHere[1]) {
             int subaddr = (prgMode == 3) ? 0xA000 : 0x8000;
             int prgbank = (prgMode == 3) ? (prgregs[1] & 7) : ((prgregs[1] & 7) >> 1);
             int ramaddr = (prgbank * ((prgMode == 3) ? 8192 : 16384)) + (addr - subaddr);
             ////System.err.println("RAM write to 0xA000 area " + utils.hex(addr) + " " + prgbank);
             //System.err.println(utils.hex(ramaddr));
-            prgram[ramaddr] = data;
+            prgram[ramaddr] = (byte) data;
         } else if (addr < 0xE000 && !romHere[2]) {
             System.err.println("RAM write to 0xC000 area " + utils.hex(addr));
-            prgram[((prgregs[2] & 7) * 8192) + (addr - 0xc000)] = data;
+            prgram[((prgregs[2] & 7) * 8192) + (addr - 0xc000)] = (byte) data;
         } else {
             System.err.println("unsupported mmc5 write " + utils.hex(addr)
                     + romHere[0] + romHere[1] + romHere[2] + prgMode);
         }
     }
 
+    @Override
+    protected void mapCPUPages() {
+        //all reads go through cartRead
+    }
+
     @Override
     public final int cartRead(final int addr) {
         //hook for turning off PPU in frame flag since idk how the real thing works
@@ -258,7 +263,7 @@ public class MMC5Mapper extends Mapper {
                     || (addr >= 0xc000 && romHere[2])
                     || (addr >= 0xa000 && romHere[1])
                     || romHere[0])))) {
-                return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)];
+                return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)] & 0xff;
             } else {
                 //don't know quite how to deal with this yet
                 System.err.println("MMC5 wants RAM at " + utils.hex(addr));
@@ -269,10 +274,10 @@ public class MMC5Mapper extends Mapper {
             //wram
             int ramaddr = wrambank * 8192 + (addr - 0x6000);
             //System.err.println("reading prgram from " + utils.hex(ramaddr));
-            return prgram[ramaddr];
+            return prgram[ramaddr] & 0xff;
         } else if (addr >= 0x5c00) {
             //exram
-            return exram[addr - 0x5c00];
+            return exram[addr - 0x5c00] & 0xff;
         } else {
             switch (addr) {
                 case 0x5015:
@@ -387,6 +392,16 @@ public class MMC5Mapper extends Mapper {
     private int fetchcount, exlatch, lastfetch, prevfetch, prevprevfetch;
     private boolean spritemode = false;
 
+    @Override
+    public boolean isPPUClocked() {
+        return true;
+    }
+
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(final int addr) {
         //so how DO we detect which reads are which without
@@ -405,7 +420,7 @@ public class MMC5Mapper extends Mapper {
                 //System.err.println(" sprites");
             }
             if (spritemode) {
-                return chr[chr_map[addr >> 10] + (addr & 1023)];
+                return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
             } else {
                 //bg mode
                 //System.err.print("t");
@@ -413,14 +428,14 @@ public class MMC5Mapper extends Mapper {
                     if (exlatch == 2) {
                         //fetch 3: tile bitmap a
                         ++exlatch;
-                        return chr[((chrOr * 1024) | ((exram[lastfetch] & 0x3f) * 4096) | (addr & 4095)) % chr.length];
+                        return chr[((chrOr * 1024) | ((exram[lastfetch] & 0x3f) * 4096) | (addr & 4095)) % chr.length] & 0xff;
                     } else if (exlatch == 3) {
                         //fetch 4: tile bitmap b (+ 8 bytes from tile bitmap a)
                         exlatch = 0;
-                        return chr[((chrOr * 1024) | ((exram[lastfetch] & 0x3f) * 4096) | (addr & 4095)) % chr.length];
+                        return chr[((chrOr * 1024) | ((exram[lastfetch] & 0x3f) * 4096) | (addr & 4095)) % chr.length] & 0xff;
                     }
                 }
-                return chr[chrmapB[(addr >> 10) & 3] + (addr & 1023)];
+                return chr[chrmapB[(addr >> 10) & 3] + (addr & 1023)] & 0xff;
             }
         } else {
             // System.err.print("n");
@@ -445,7 +460,7 @@ public class MMC5Mapper extends Mapper {
                 } else if (exlatch == 1) {
                     ++exlatch;
                     //fetch 2: attribute table fetch
-                    int theone = exram[lastfetch];
+                    int theone = exram[lastfetch] & 0xff;
                     return ((theone & 0xc0) >> 6) | ((theone & 0xc0) >> 4) | ((theone & 0xc0) >> 2) | (theone & 0xc0);
                 }
             }
@@ -472,7 +487,7 @@ public class MMC5Mapper extends Mapper {
         }
     }
 
-    public void setMirroring(int ntsetup, int[] exram) {
+    public void setMirroring(int ntsetup, byte[] exram) {
         //hook for the MMC5
         switch (ntsetup & 3) {
             case 0:
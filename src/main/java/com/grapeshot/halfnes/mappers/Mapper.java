@@ -7,7 +7,8 @@ package com.grapeshot.halfnes.mappers;
 import com.grapeshot.halfnes.*;
 import com.grapeshot.halfnes.PPU;
 import java.util.Arrays;
-import java.util.prefs.Preferences;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.zip.CRC32;
 
 public abstract class Mapper {
@@ -17,20 +18,39 @@ public abstract class Mapper {
     public CPU cpu;
     public CPURAM cpuram;
     public PPU ppu;
-    protected int[] prg, chr, chr_map, prg_map, prgram = new int[8192];
+    protected int[] chr_map, prg_map;
+    //rom and ram are stored a byte per byte, so reads have to mask with 0xff
+    protected byte[] prg, chr, prgram = new byte[8192];
     protected MirrorType scrolltype;
     protected boolean haschrram = false, hasprgram = true, savesram = false;
     // PPU nametables
-    protected final int[] pput0 = new int[0x400], pput1 = new int[0x400],
-            pput2 = new int[0x400], pput3 = new int[0x400];
+    protected final byte[] pput0 = new byte[0x400], pput1 = new byte[0x400],
+            pput2 = new byte[0x400], pput3 = new byte[0x400];
     //99% of games only use 2 of these, but we have to create 4 and use ptrs to them
     //for those with extra RAM for 4 screen mirror
-    protected int[] nt0, nt1, nt2, nt3;
+    protected byte[] nt0, nt1, nt2, nt3;
     //and these are pointers to the nametables, so  for singlescreen when we switch
     //and then switch back the data in the other singlescreen NT isn't gone.
+    //bank layout the CPU page table was last built from
+    private int[] pagedprg_map = new int[0];
+    private byte[] pagedprg, pagedprgram;
+    //chr as it came from the rom cache, shared with other instances
+    private byte[] sharedchr;
+    //chr decoded into tile rows for the PPU, see getChrRow. Decoded chr rom
+    //is shared between instances the same way the chr itself is.
+    private static final Map<byte[], int[]> sharedrows = new WeakHashMap<>();
+    private int[] chrrows;
+    private byte[] chrrowsof;
+    //PPU page table, 1k pages of the PPU address space, see mapPPUPages
+    private final byte[][] ppupages = new byte[16][];
+    private final int[] ppupageoffsets = new int[16];
+    //bank layout the PPU page table was last built from
+    private int[] pagedchr_map = new int[0];
+    private byte[] pagedchr, pagednt0, pagednt1, pagednt2, pagednt3;
+    private boolean pagedhasprgram;
     long crc;
     TVType region;
-    Preferences prefs = PrefsSingleton.get();
+    protected EmulatorConfig config = EmulatorConfig.DEFAULTS;
 
     public boolean supportsSaves() {
         return savesram;
@@ -54,11 +74,9 @@ public abstract class Mapper {
         DENDY;
     }
 
-    public static long crc32(int[] array) {
+    public static long crc32(byte[] array) {
         CRC32 c = new CRC32();
-        for (int i : array) {
-            c.update(i);
-        }
+        c.update(array);
         return c.getValue();
     }
 
@@ -83,11 +101,12 @@ public abstract class Mapper {
             hasprgram = false;
         }
         chr = loader.load(chrsize, chroff);
+        sharedchr = chr;
 
         if (chrsize == 0) {//chr ram
             haschrram = true;
             chrsize = 8192;
-            chr = new int[8192];
+            chr = new byte[8192];
         }
         prg_map = new int[32];
         for (int i = 0; i < 32; ++i) {
@@ -100,10 +119,10 @@ public abstract class Mapper {
         cpuram = new CPURAM(this);
         cpu = new CPU(cpuram);
         ppu = new PPU(this);
-        Arrays.fill(pput0, 0xa0);
-        Arrays.fill(pput1, 0xb0);
-        Arrays.fill(pput2, 0xc0);
-        Arrays.fill(pput3, 0xd0);
+        Arrays.fill(pput0, (byte) 0xa0);
+        Arrays.fill(pput1, (byte) 0xb0);
+        Arrays.fill(pput2, (byte) 0xc0);
+        Arrays.fill(pput3, (byte) 0xd0);
         setmirroring(scrolltype);
     }
 
@@ -116,7 +135,7 @@ public abstract class Mapper {
     public void cartWrite(final int addr, final int data) {
         //default no-mapper operation just writes if in PRG RAM range
         if (addr >= 0x6000 && addr < 0x8000) {
-            prgram[addr & 0x1fff] = data;
+            prgram[addr & 0x1fff] = (byte) data;
         }
     }
 
@@ -124,24 +143,251 @@ public abstract class Mapper {
         // by default has wram at 0x6000 and cartridge at 0x8000-0xfff
         // but some mappers have different so override for those
         if (addr >= 0x8000) {
-            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)];
+            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)] & 0xff;
         } else if (addr >= 0x6000 && hasprgram) {
-            return prgram[addr & 0x1fff];
+            return prgram[addr & 0x1fff] & 0xff;
         }
         return addr >> 8; //open bus
     }
 
+    /**
+     * Rebuilds the CPU page table if PRG banks were switched since it was last
+     * built. Called after every write to the cartridge, and after loading,
+     * reset and anything else that can move banks around.
+     */
+    public final void updateCPUPages() {
+        if (cpuram == null || prg_map == null) {
+            return;
+        }
+        if (prg != pagedprg || prgram != pagedprgram || hasprgram != pagedhasprgram
+                || !Arrays.equals(prg_map, pagedprg_map)) {
+            pagedprg = prg;
+            pagedprgram = prgram;
+            pagedhasprgram = hasprgram;
+            pagedprg_map = prg_map.clone();
+            mapCPUPages();
+        }
+    }
+
+    /**
+     * Points the CPU page table at the PRG RAM and PRG ROM that are mapped in,
+     * so reads from there skip cartRead. This matches what the default
+     * cartRead does, so mappers whose reads from 0x6000 up are anything other
+     * than plain banked memory have to override it and leave those pages
+     * unmapped. Writes to the PRG RAM skip cartWrite as well, if the mapper
+     * says they can.
+     */
+    protected void mapCPUPages() {
+        final boolean plainwrites = plainPRGRAMWrites();
+        for (int page = 0x60; page < 0x80; ++page) {
+            if (hasprgram) {
+                cpuram.mapPage(page, prgram, (page & 0x1f) << 8);
+                if (plainwrites) {
+                    cpuram.mapWritePage(page, prgram, (page & 0x1f) << 8);
+                } else {
+                    cpuram.unmapWritePage(page);
+                }
+            } else {
+                cpuram.unmapPage(page);
+            }
+        }
+        for (int page = 0x80; page < 0x100; ++page) {
+            cpuram.mapPage(page, prg, prg_map[(page & 0x7f) >> 2] + ((page & 3) << 8));
+        }
+    }
+
+    /**
+     * Whether a write to 0x6000-0x7fff does nothing but store into prgram,
+     * the way the default cartWrite does. Games use that as work RAM, so
+     * those writes then go straight into the array and don't bring the PPU
+     * up to date or check for bank switches. Mappers that have registers or
+     * write protection anywhere in there have to leave this false.
+     */
+    protected boolean plainPRGRAMWrites() {
+        return false;
+    }
+
+    /**
+     * Rebuilds the PPU page table if CHR banks or nametables were switched
+     * since it was last built. Called at the same times as updateCPUPages,
+     * and whenever the mirroring changes.
+     */
+    public final void updatePPUPages() {
+        if (chr_map == null) {
+            return;
+        }
+        if (chr != pagedchr || nt0 != pagednt0 || nt1 != pagednt1
+                || nt2 != pagednt2 || nt3 != pagednt3
+                || !Arrays.equals(chr_map, pagedchr_map)) {
+            pagedchr = chr;
+            pagednt0 = nt0;
+            pagednt1 = nt1;
+            pagednt2 = nt2;
+            pagednt3 = nt3;
+            pagedchr_map = chr_map.clone();
+            mapPPUPages();
+        }
+    }
+
+    /**
+     * Points the PPU page table at the chr banks and nametables that are
+     * mapped in, so the PPU can fetch from them without calling ppuRead. This
+     * matches what the default ppuRead does; mappers whose reads are anything
+     * other than plain banked memory have to override it and leave those pages
+     * unmapped. The last page, with the palette in it, is never mapped.
+     */
+    protected void mapPPUPages() {
+        Arrays.fill(ppupages, null);
+        if (watchesChrReads()) {
+            return;
+        }
+        for (int page = 0; page < 8; ++page) {
+            mapPPUPage(page, chr, chr_map[page]);
+        }
+        //0x3000-0x3bff mirrors the first 3 nametables
+        for (int page = 8; page < 15; ++page) {
+            switch (page & 3) {
+                case 0:
+                    mapPPUPage(page, nt0, 0);
+                    break;
+                case 1:
+                    mapPPUPage(page, nt1, 0);
+                    break;
+                case 2:
+                    mapPPUPage(page, nt2, 0);
+                    break;
+                case 3:
+                default:
+                    mapPPUPage(page, nt3, 0);
+                    break;
+            }
+        }
+    }
+
+    protected final void mapPPUPage(final int page, final byte[] data, final int offset) {
+        ppupages[page] = data;
+        ppupageoffsets[page] = offset;
+    }
+
+    protected final void unmapPPUPage(final int page) {
+        ppupages[page] = null;
+    }
+
+    /**
+     * Returns the PPU page table: for each 1k page of PPU memory, the array
+     * it's in, or null if it has to be read with ppuRead. The arrays stay the
+     * same for the life of the mapper, only their contents change.
+     */
+    public final byte[][] getPPUPages() {
+        return ppupages;
+    }
+
+    /**
+     * Returns where each page of the PPU page table starts in its array.
+     */
+    public final int[] getPPUPageOffsets() {
+        return ppupageoffsets;
+    }
+
+    /**
+     * Makes sure chr is this instance's own copy before writing to it, since
+     * the chr loaded from the rom is shared by everything running that rom.
+     */
+    protected final void ownChr() {
+        if (chr == sharedchr) {
+            chr = chr.clone();
+            updatePPUPages();
+        }
+    }
+
+    /**
+     * Returns one row of a tile decoded into 2 bit pixels, as
+     * utils.interleave(low plane, high plane) in the low 16 bits with the
+     * leftmost pixel on top, and the same row flipped horizontally in the high
+     * 16 bits. Rows are cached by where they are in chr, so bank switches
+     * don't invalidate anything.
+     *
+     * Only gives the same thing as two ppuRead calls for mappers that don't
+     * watch pattern table reads.
+     *
+     * @param addr pattern table address of the row's low plane byte
+     */
+    public final int getChrRow(final int addr) {
+        final int offset = chr_map[addr >> 10] + (addr & 1023);
+        if (chrrowsof != chr) {
+            decodeChr();
+        }
+        if ((offset & 8) == 0) {
+            return chrrows[((offset >> 4) << 3) | (offset & 7)];
+        }
+        //bank that doesn't start on a tile boundary
+        return decodeRow(offset);
+    }
+
+    private void decodeChr() {
+        int[] rows = null;
+        if (chr == sharedchr) {
+            synchronized (sharedrows) {
+                rows = sharedrows.get(chr);
+            }
+        }
+        if (rows == null) {
+            rows = new int[((chr.length + 15) >> 4) << 3];
+            for (int i = 0; i < rows.length; ++i) {
+                rows[i] = decodeRow(((i >> 3) << 4) | (i & 7));
+            }
+            if (chr == sharedchr) {
+                synchronized (sharedrows) {
+                    sharedrows.put(chr, rows);
+                }
+            }
+        }
+        chrrows = rows;
+        chrrowsof = chr;
+    }
+
+    private int decodeRow(final int offset) {
+        final int low = chr[offset] & 0xff;
+        final int high = (offset + 8 < chr.length) ? chr[offset + 8] & 0xff : 0;
+        return utils.interleave(low, high)
+                | (utils.interleave(utils.reverseByte(low), utils.reverseByte(high)) << 16);
+    }
+
+    /**
+     * Updates the decoded row for a byte of chr that just got written.
+     */
+    protected final void chrWritten(final int offset) {
+        if (chrrowsof == chr) {
+            final int row = offset & ~8;
+            chrrows[((row >> 4) << 3) | (row & 7)] = decodeRow(row);
+        }
+    }
+
+    /**
+     * Has to be called after writing to the array from getChr() directly.
+     */
+    public void chrChanged() {
+        chrrowsof = null;
+    }
+
+    public boolean watchesChrReads() {
+        //true if reading the pattern tables does anything but return
+        //chr[chr_map[addr >> 10] + (addr & 1023)], like flip a chr latch or
+        //clock an irq counter, so the PPU has to go through ppuRead every time
+        return false;
+    }
+
     public int ppuRead(int addr) {
         if (addr < 0x2000) {
-            return chr[chr_map[addr >> 10] + (addr & 1023)];
+            return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
         } else {
             switch (addr & 0xc00) {
                 case 0:
-                    return nt0[addr & 0x3ff];
+                    return nt0[addr & 0x3ff] & 0xff;
                 case 0x400:
-                    return nt1[addr & 0x3ff];
+                    return nt1[addr & 0x3ff] & 0xff;
                 case 0x800:
-                    return nt2[addr & 0x3ff];
+                    return nt2[addr & 0x3ff] & 0xff;
                 case 0xc00:
                 default:
                     if (addr >= 0x3f00) {
@@ -151,7 +397,7 @@ public abstract class Mapper {
                         }
                         return ppu.pal[addr];
                     } else {
-                        return nt3[addr & 0x3ff];
+                        return nt3[addr & 0x3ff] & 0xff;
                     }
             }
         }
@@ -163,19 +409,21 @@ public abstract class Mapper {
             if (haschrram) {
                 // Shame on you, Milon's Secret Castle. What possible
                 // reason could you have to write to your own chr rom?
-                chr[chr_map[addr >> 10] + (addr & 1023)] = data;
+                ownChr();
+                chr[chr_map[addr >> 10] + (addr & 1023)] = (byte) data;
+                chrWritten(chr_map[addr >> 10] + (addr & 1023));
                 // anyway, only allowing writes when there's actual ram here.
             }
         } else {
             switch (addr & 0xc00) {
                 case 0x0:
-                    nt0[addr & 0x3ff] = data;
+                    nt0[addr & 0x3ff] = (byte) data;
                     break;
                 case 0x400:
-                    nt1[addr & 0x3ff] = data;
+                    nt1[addr & 0x3ff] = (byte) data;
                     break;
                 case 0x800:
-                    nt2[addr & 0x3ff] = data;
+                    nt2[addr & 0x3ff] = (byte) data;
                     break;
                 case 0xc00:
                     if (addr >= 0x3f00 && addr <= 0x3fff) {
@@ -184,9 +432,9 @@ public abstract class Mapper {
                         if (addr >= 0x10 && ((addr & 3) == 0)) { //0x10,0x14,0x18 etc are mirrors of 0x0, 0x4,0x8 etc
                             addr -= 0x10;
                         }
-                        ppu.pal[addr] = (data & 0x3f);
+                        ppu.pal[addr] = (byte) (data & 0x3f);
                     } else {
-                        nt3[addr & 0x3ff] = data;
+                        nt3[addr & 0x3ff] = (byte) data;
                     }
                     break;
                 default:
@@ -230,12 +478,30 @@ public abstract class Mapper {
         //needed for mmc3 irq counter
     }
 
-    public void setPRGRAM(final int[] newprgram) {
+    /**
+     * Same as calling checkA12(addr) the given number of times in a row. The
+     * PPU uses this to hand over the polls it made while A12 stayed put.
+     */
+    public void checkA12(int addr, int times) {
+        for (int i = 0; i < times; ++i) {
+            checkA12(addr);
+        }
+    }
+
+    public boolean isPPUClocked() {
+        //true if the PPU can change something the CPU sees, like an IRQ counter
+        //clocked off of A12 or the scanline, so the PPU has to be caught up
+        //before every instruction instead of only when the CPU touches it
+        return false;
+    }
+
+    public void setPRGRAM(final byte[] newprgram) {
         prgram = newprgram;
+        updateCPUPages();
 
     }
 
-    public int[] getPRGRam() {
+    public byte[] getPRGRam() {
         return prgram;
     }
 
@@ -275,25 +541,26 @@ public abstract class Mapper {
                 break;
         }
         scrolltype = type;
+        updatePPUPages();
     }
 
     public TVType getTVType() {
-        int prefsregion = prefs.getInt("region", 0);
-        switch (prefsregion) {
-            case 0:
-            default://auto detect
-                return region;
-            case 1: //ntsc
-                return TVType.NTSC;
-            case 2: //pal
-                return TVType.PAL;
-            case 3: //dendy
-                return TVType.DENDY;
-        }
+        //the config can force a region, otherwise go by the rom header
+        final TVType forced = config.getRegion();
+        return (forced != null) ? forced : region;
     }
 
     public void setTVType(int val){
-        prefs.putInt("region", val);
+        //only this instance, from a save state
+        region = TVType.values()[val];
+    }
+
+    public EmulatorConfig getConfig() {
+        return config;
+    }
+
+    public void setConfig(EmulatorConfig config) {
+        this.config = config;
     }
 
     public MirrorType getScrolltype() {
@@ -312,11 +579,11 @@ public abstract class Mapper {
         return hasprgram;
     }
 
-    public int[] getChr() {
+    public byte[] getChr() {
         return chr;
     }
 
-    public int[] getPputN(int n) {
+    public byte[] getPputN(int n) {
         switch (n){
             case 0: return pput0;
             case 1: return pput1;
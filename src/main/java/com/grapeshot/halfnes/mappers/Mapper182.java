@@ -156,6 +156,11 @@ public class Mapper182 extends Mapper {
         }
     }
 
+    @Override
+    public boolean isPPUClocked() {
+        return true;
+    }
+
     @Override
     public void notifyscanline(int scanline) {
         //Scanline counter
@@ -21,6 +21,11 @@ public class Mapper185 extends Mapper {
         }
     }
 
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(int addr) {
         if (!chr_enabled) {
@@ -28,7 +33,7 @@ public class Mapper185 extends Mapper {
             return 0x12;
         }
         if (addr < 0x2000) {
-            return chr[chr_map[addr >> 10] + (addr & 1023)];
+            return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
         } else {
             return super.ppuRead(addr);
         }
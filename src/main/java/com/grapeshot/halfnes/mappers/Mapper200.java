@@ -16,14 +16,19 @@ public class Mapper200 extends Mapper {
         }
     }
 
+    @Override
+    protected void mapCPUPages() {
+        //all reads go through cartRead
+    }
+
     @Override
     public int cartRead(final int addr) {
         // by default has wram at 0x6000 and cartridge at 0x8000-0xfff
         // but some mappers have different so override for those
         if (addr < 0x4000) {
-            return prg[prg_map[((addr & 0x3fff)) >> 10] + (addr & 1023)];
+            return prg[prg_map[((addr & 0x3fff)) >> 10] + (addr & 1023)] & 0xff;
         } else {
-            return prg[prg_map[((addr & 0x3fff)) >> 10] + ((addr - 0x4000) & 1023)];
+            return prg[prg_map[((addr & 0x3fff)) >> 10] + ((addr - 0x4000) & 1023)] & 0xff;
         }
     }
 
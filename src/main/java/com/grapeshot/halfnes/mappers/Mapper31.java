@@ -29,7 +29,7 @@ public class Mapper31 extends Mapper {
     public void cartWrite(final int addr, final int data) {
         if (addr >= 0x6000 && addr < 0x8000) {
             //default no-mapper operation just writes if in PRG RAM range
-            prgram[addr & 0x1fff] = data;
+            prgram[addr & 0x1fff] = (byte) data;
         } else if ((addr >= 0x5000) && (addr < 0x6000)) {
             nsfBanks[addr & 7] = data;
             //System.err.println(addr - 0x5ff8 + " " + data);
@@ -46,10 +46,10 @@ public class Mapper31 extends Mapper {
         if (addr >= 0x8000) {
 
             int fuuu = prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023);
-            return prg[fuuu];
+            return prg[fuuu] & 0xff;
         } else if (addr >= 0x6000 && hasprgram) {
 
-            return prgram[addr & 0x1fff];
+            return prgram[addr & 0x1fff] & 0xff;
         } else if ((addr >= 0x5000)) {
             return nsfBanks[addr & 7];
         }
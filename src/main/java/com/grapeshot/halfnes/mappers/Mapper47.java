@@ -30,6 +30,12 @@ public class Mapper47 extends MMC3Mapper {
         setbank6();
     }
 
+    @Override
+    protected boolean plainPRGRAMWrites() {
+        //the outer bank register is at 0x6000-0x7fff
+        return false;
+    }
+
     @Override
     public void cartWrite(int addr, int data) {
         if (addr < 0x6000 || addr > 0xffff) {
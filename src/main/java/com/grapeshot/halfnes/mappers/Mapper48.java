@@ -143,6 +143,11 @@ public class Mapper48 extends Mapper {
         }
     }
 
+    @Override
+    public boolean isPPUClocked() {
+        return true;
+    }
+
     @Override
     public void notifyscanline(int scanline) {
         //Scanline counter
@@ -76,12 +76,12 @@ public class NSFMapper extends Mapper {
         //so total number of banks can be 2 more than # of 4k
         //chunks in the file.
         int paddingLen = (nsfBanking) ? load & 0x0fff : load - 0x8000;
-        prg = new int[1024 * 1024];
+        prg = new byte[1024 * 1024];
         System.arraycopy(loader.load(loader.romlen(), prgoff), 0, prg, paddingLen, loader.romlen());
         crc = crc32(prg);
         haschrram = true;
         chrsize = 8192;
-        chr = new int[8192];
+        chr = new byte[8192];
         prg_map = new int[(((sndchip & (utils.BIT2)) != 0)) ? 40 : 32];
         if (!nsfBanking) {
             //identity mapping from 1st loaded bank
@@ -104,18 +104,23 @@ public class NSFMapper extends Mapper {
         cpuram = new CPURAM(this);
         cpu = new CPU(cpuram);
         ppu = new PPU(this);
-        Arrays.fill(pput0, 0x00);
+        Arrays.fill(pput0, (byte) 0x00);
         setmirroring(scrolltype);
         //System.out.println(sndchip);
 
         //set up the PPU to display titles
         //pick a random color based on the tune's crc (why not?)
         ppu.pal[0] = 0x3f;
-        ppu.pal[1] = 0x20 + (int) (crc % 12);
-        ppu.pal[2] = 0x20 + (int) (crc % 12);
-        ppu.pal[3] = 0x20 + (int) (crc % 12);
+        ppu.pal[1] = (byte) (0x20 + crc % 12);
+        ppu.pal[2] = (byte) (0x20 + crc % 12);
+        ppu.pal[3] = (byte) (0x20 + crc % 12);
 
-        chr = NSFPlayerFont.font;
+        chr = utils.toBytes(NSFPlayerFont.font);
+    }
+
+    @Override
+    public boolean isPPUClocked() {
+        return true;
     }
 
     @Override
@@ -153,14 +158,14 @@ public class NSFMapper extends Mapper {
         //copy titles to ppu nametable
         for (int i = 0; i < 32 * 24; ++i) {
             //random pattern from basic one liner
-            pput0[i] = (Math.random() > 0.5) ? 0x2f : 0x5c;
+            pput0[i] = (byte) ((Math.random() > 0.5) ? 0x2f : 0x5c);
         }
         for (int i = 0; i < 96; ++i) {
-            pput0[i + (32 * 25)] = loader.header[i + 0xe];
+            pput0[i + (32 * 25)] = (byte) loader.header[i + 0xe];
         }
 
         for (int i = 0; i < trackstr.length(); ++i) {
-            pput0[i + (32 * 28)] = trackstr.charAt(i);
+            pput0[i + (32 * 28)] = (byte) trackstr.charAt(i);
         }
 
         if (!hasInitSound) {
@@ -209,21 +214,21 @@ public class NSFMapper extends Mapper {
         } else if (fds && nsfBanking && addr >= 0x6000) {
             if (addr < 0x8000) {
                 int fuuu = prg_map[((addr - 0x6000) >> 10) + 32] + (addr & 1023);
-                prg[fuuu] = data;
+                prg[fuuu] = (byte) data;
             } else {
                 int fuuu = prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023);
-                prg[fuuu] = data;
+                prg[fuuu] = (byte) data;
             }
         } else if (fds && !nsfBanking && addr >= 0x6000) {
             if (addr < 0x8000) {
-                prgram[addr - 0x6000] = data;
+                prgram[addr - 0x6000] = (byte) data;
             } else {
                 int fuuu = prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023);
-                prg[fuuu] = data;
+                prg[fuuu] = (byte) data;
             }
         } else if (addr >= 0x6000 && addr < 0x8000) {
             //default no-mapper operation just writes if in PRG RAM range
-            prgram[addr & 0x1fff] = data;
+            prgram[addr & 0x1fff] = (byte) data;
         } else if ((addr >= 0x5ff8) && (addr < 0x6000)) {
             nsfBanks[addr - 0x5ff8] = data;
             //System.err.println(addr - 0x5ff8 + " " + data);
@@ -237,7 +242,7 @@ public class NSFMapper extends Mapper {
             nsfBanks[9] = data;
             setBanks();
         } else if (mmc5 && (addr >= 0x5C00) && (addr <= 0x5FF5)) {
-            prgram[addr - 0x5C00] = data; //RAM emulates ExRAM here
+            prgram[addr - 0x5C00] = (byte) data; //RAM emulates ExRAM here
         } else if (mmc5 && (addr == 0x5206)) {
             mmc5multiplier2 = data;
         } else if (mmc5 && (addr == 0x5205)) {
@@ -251,6 +256,11 @@ public class NSFMapper extends Mapper {
         }
     }
 
+    @Override
+    protected void mapCPUPages() {
+        //all reads go through cartRead
+    }
+
     @Override
     public int cartRead(final int addr) {
         // by default has wram at 0x6000 and cartridge at 0x8000-0xfff
@@ -272,13 +282,13 @@ public class NSFMapper extends Mapper {
                 }
             }
             int fuuu = prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023);
-            return prg[fuuu];
+            return prg[fuuu] & 0xff;
         } else if (addr >= 0x6000 && hasprgram) {
             if (fds && nsfBanking) {
                 int fuuu = prg_map[((addr - 0x6000) >> 10) + 32] + (addr & 1023);
-                return prg[fuuu];
+                return prg[fuuu] & 0xff;
             } else {
-                return prgram[addr & 0x1fff];
+                return prgram[addr & 0x1fff] & 0xff;
             }
         } else if ((addr >= 0x5ff8)) {
             return nsfBanks[addr - 0x5ff8];
@@ -287,7 +297,7 @@ public class NSFMapper extends Mapper {
         } else if (fds && nsfBanking && (addr == 0x5ff7)) {
             return nsfBanks[9];
         } else if (mmc5 && addr >= 0x5C00) {
-            return prgram[addr - 0x5C00]; //RAM emulates ExRAM here
+            return prgram[addr - 0x5C00] & 0xff; //RAM emulates ExRAM here
         } else if (mmc5 && addr == 0x5206) {
             return ((mmc5multiplier1 * mmc5multiplier2) >> 8) & 0xff;
         } else if (mmc5 && addr == 0x5205) {
@@ -481,7 +491,7 @@ public class NSFMapper extends Mapper {
     private void writeTracks() {
         String cur = String.format("%3d / %-3d", song + 1, numSongs + 1);
         for (int i = 0; i < cur.length(); ++i) {
-            pput0[i + (32 * 28) + 6] = cur.charAt(i);
+            pput0[i + (32 * 28) + 6] = (byte) cur.charAt(i);
         }
     }
 }
@@ -20,7 +20,8 @@ public class NamcoMapper extends Mapper {
     Namco163SoundChip sound = new Namco163SoundChip();
     private boolean hasInitSound = false;
     private int irqcounter = 0x3fff;
-    private int[] chrbanks = new int[8], chr_ram = new int[16384];
+    private int[] chrbanks = new int[8];
+    private byte[] chr_ram = new byte[16384];
 
     @Override
     public void loadrom() throws BadMapperException {
@@ -56,9 +57,9 @@ public class NamcoMapper extends Mapper {
             irqack();
             return ((irqcounter >> 8) & 0x7f) | (irqenable ? 0x80 : 0);
         } else if (addr >= 0x8000) {
-            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)];
+            return prg[prg_map[((addr & 0x7fff)) >> 10] + (addr & 1023)] & 0xff;
         } else if (addr >= 0x6000 && hasprgram) {
-            return prgram[addr & 0x1fff];
+            return prgram[addr & 0x1fff] & 0xff;
         }
         return addr >> 8; //open bus
     }
@@ -180,21 +181,26 @@ public class NamcoMapper extends Mapper {
 //        utils.printarray(chr_map);
     }
 
+    @Override
+    public boolean watchesChrReads() {
+        return true;
+    }
+
     @Override
     public int ppuRead(int addr) {
         //i can't find any games that use this additional chr ram
         //so who knows if this works?
         if (addr < 0x1000) {
             if (chrramenable0 && chrbanks[addr >> 10] > 0xe0) {
-                return chr_ram[chr_map[addr >> 10] + (addr & 1023)];
+                return chr_ram[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
             } else {
-                return chr[chr_map[addr >> 10] + (addr & 1023)];
+                return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
             }
         } else if (addr < 0x2000) {
             if (chrramenable1 && chrbanks[addr >> 10] > 0xe0) {
-                return chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)];
+                return chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)] & 0xff;
             } else {
-                return chr[chr_map[addr >> 10] + (addr & 1023)];
+                return chr[chr_map[addr >> 10] + (addr & 1023)] & 0xff;
             }
         } else {
             return super.ppuRead(addr);
@@ -206,15 +212,19 @@ public class NamcoMapper extends Mapper {
         addr &= 0x3fff;
         if (addr < 0x1000) {
             if (chrramenable0 && chrbanks[addr >> 10] > 0xe0) {
-                chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)] = data;
+                chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)] = (byte) data;
             } else {
-                chr[chr_map[addr >> 10] + (addr & 1023)] = data;
+                ownChr();
+                chr[chr_map[addr >> 10] + (addr & 1023)] = (byte) data;
+                chrWritten(chr_map[addr >> 10] + (addr & 1023));
             }
         } else if (addr < 0x2000) {
             if (chrramenable1 && chrbanks[addr >> 10] > 0xe0) {
-                chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)] = data;
+                chr_ram[chr_map[addr >> 10] - (0xe0 << 10) + (addr & 1023)] = (byte) data;
             } else {
-                chr[chr_map[addr >> 10] + (addr & 1023)] = data;
+                ownChr();
+                chr[chr_map[addr >> 10] + (addr & 1023)] = (byte) data;
+                chrWritten(chr_map[addr >> 10] + (addr & 1023));
             }
         } else {
             super.ppuWrite(addr, data);
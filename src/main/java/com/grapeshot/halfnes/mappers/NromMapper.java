@@ -17,7 +17,7 @@ public class NromMapper extends Mapper {
         super.loadrom();
         //copy the whole rom around so we need to do less math
 
-        int[] shiftedprg = new int[65536];
+        byte[] shiftedprg = new byte[65536];
         System.arraycopy(prg, 0, shiftedprg, 0x8000, prg.length);
         if (prgsize <= 16384) {
             //double up the rom if 16k
@@ -26,12 +26,27 @@ public class NromMapper extends Mapper {
         prg = shiftedprg;
     }
 
+    @Override
+    protected void mapCPUPages() {
+        super.mapCPUPages();
+        //prg is already laid out at its cpu addresses
+        for (int page = 0x80; page < 0x100; ++page) {
+            cpuram.mapPage(page, prg, page << 8);
+        }
+    }
+
+    @Override
+    protected boolean plainPRGRAMWrites() {
+        //no registers below 0x8000
+        return true;
+    }
+
     @Override
     public int cartRead(final int addr) {
         if (addr >= 0x8000) {
-            return prg[addr];
+            return prg[addr] & 0xff;
         } else if (addr >= 0x6000 && hasprgram) {
-            return prgram[addr & 0x1fff];
+            return prgram[addr & 0x1fff] & 0xff;
         }
         return addr >> 8; //open bus
     }
@@ -40,15 +55,15 @@ public class NromMapper extends Mapper {
     public int ppuRead(int addr) {
         if (addr < 0x2000) {
             //math is hard let's go shopping
-            return chr[addr];
+            return chr[addr] & 0xff;
         } else {
             switch (addr & 0xc00) {
                 case 0:
-                    return nt0[addr & 0x3ff];
+                    return nt0[addr & 0x3ff] & 0xff;
                 case 0x400:
-                    return nt1[addr & 0x3ff];
+                    return nt1[addr & 0x3ff] & 0xff;
                 case 0x800:
-                    return nt2[addr & 0x3ff];
+                    return nt2[addr & 0x3ff] & 0xff;
                 case 0xc00:
                 default:
                     if (addr >= 0x3f00) {
@@ -58,7 +73,7 @@ public class NromMapper extends Mapper {
                         }
                         return ppu.pal[addr];
                     } else {
-                        return nt3[addr & 0x3ff];
+                        return nt3[addr & 0x3ff] & 0xff;
                     }
             }
         }
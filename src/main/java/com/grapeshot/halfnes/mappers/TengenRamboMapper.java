@@ -194,6 +194,11 @@ public class TengenRamboMapper extends Mapper {
         }
     }
 
+    @Override
+    public boolean isPPUClocked() {
+        return true;
+    }
+
     @Override
     public void notifyscanline(int scanline) {
         if (irqmode) {
@@ -25,6 +25,12 @@ public class UnromMapper extends Mapper implements MapperHelper.MapperState<Inte
         }
     }
 
+    @Override
+    protected boolean plainPRGRAMWrites() {
+        //no registers below 0x8000
+        return true;
+    }
+
     @Override
     public final void cartWrite(int addr, int data) {
         if (addr < 0x8000 || addr > 0xffff) {
@@ -29,6 +29,20 @@ public class HalfnesSaveStateHandler {
         IntStream.range(0, data.length).forEach(i -> data[i] = buffer.getInt());
     }
 
+    //byte backed memory is still stored as one int per byte, so older
+    //save states keep loading
+    private static void putInt(ByteBuffer buffer, byte[] data) {
+        for (byte d : data) {
+            buffer.putInt(d & 0xff);
+        }
+    }
+
+    private static void getInt(ByteBuffer buffer, byte[] data) {
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) buffer.getInt();
+        }
+    }
+
     public byte[] getSaveStateData(NES nes) {
         buf.clear();
         processState(Type.SAVE, nes);
@@ -131,6 +145,7 @@ public class HalfnesSaveStateHandler {
         }
         if (mapper.hasChrRam()) {
             getInt(buf, mapper.getChr());
+            mapper.chrChanged();
         }
         getInt(buf, mapper.getPputN(0));
         getInt(buf, mapper.getPputN(1));
@@ -141,6 +156,8 @@ public class HalfnesSaveStateHandler {
             MapperHelper.MapperState<Integer> mapperState = (MapperHelper.MapperState<Integer>) mapper;
             mapperState.loadState(buf.getInt());
         }
+        mapper.updateCPUPages();
+        mapper.updatePPUPages();
 
         mapper.setmirroring(type);
     }
@@ -0,0 +1,81 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes.ui;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands finished frames from the emulation thread to a render thread. There
+ * are three buffers: the one being filled, the one being rendered, and one in
+ * the middle with the newest finished frame. Each side swaps its buffer with
+ * the middle one in a single atomic exchange, so neither ever waits on the
+ * other. If frames come in faster than they get rendered, the older ones are
+ * dropped.
+ *
+ * One thread fills and publishes, one other thread takes.
+ */
+final class FrameExchange {
+
+    static final class Frame {
+
+        final int[] pixels = new int[240 * 256];
+        final int[] bgcolors = new int[256];
+        final int[] lineversions = new int[240];
+        //the PPU array the versions were copied from, they only compare
+        //with versions from the same one
+        int[] versionsfrom;
+        boolean dotcrawl;
+    }
+
+    //set in the middle index while nobody has taken that frame yet
+    private static final int FRESH = 4;
+    private final Frame[] frames = {new Frame(), new Frame(), new Frame()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    //each only ever touched by its own side
+    private int filling = 0, rendering = 2;
+    private volatile Thread taker;
+
+    /**
+     * Returns the buffer to fill in with the next frame.
+     */
+    Frame filling() {
+        return frames[filling];
+    }
+
+    /**
+     * Makes the filled buffer the newest frame and wakes up the taker.
+     */
+    void publish() {
+        filling = middle.getAndSet(filling | FRESH) & 3;
+        final Thread t = taker;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Returns the newest frame, waiting until there is one that hasn't been
+     * taken yet. The frame stays valid until the next take.
+     *
+     * @throws InterruptedException if the taker was interrupted, even if a
+     * frame was ready, so a steady stream of frames can't keep it going
+     */
+    Frame take() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        taker = Thread.currentThread();
+        //only this side clears FRESH, so once it's seen it stays set
+        while ((middle.get() & FRESH) == 0) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        rendering = middle.getAndSet(rendering) & 3;
+        return frames[rendering];
+    }
+}
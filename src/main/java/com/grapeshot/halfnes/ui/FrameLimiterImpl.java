@@ -4,8 +4,8 @@
  */
 package com.grapeshot.halfnes.ui;
 
+import com.grapeshot.halfnes.APU;
 import com.grapeshot.halfnes.NES;
-import com.grapeshot.halfnes.PrefsSingleton;
 
 import java.util.concurrent.locks.LockSupport;
 
@@ -18,6 +18,9 @@ public class FrameLimiterImpl implements FrameLimiterInterface {
     NES nes;
     private long sleepingtest = 0;
     public long FRAME_NS;
+    //most the frame length is stretched or shrunk to steer the audio
+    //buffer back to its target, well under anything noticeable
+    private final static double MAX_RATE_ADJUST = 0.005;
 
     public FrameLimiterImpl(NES nes, long framens) {
         this.nes = nes;
@@ -32,12 +35,13 @@ public class FrameLimiterImpl implements FrameLimiterInterface {
     @Override
     public void sleep() {
         //Frame Limiter
-        if (!PrefsSingleton.get().getBoolean("Sleep", true)) {
+        if (!nes.getConfig().isSleep()) {
             return; //skip frame limiter if pref set
         }
+        final long framens = (long) (FRAME_NS * rateAdjust());
         final long timeleft = System.nanoTime() - nes.frameStartTime;
-        if (timeleft < FRAME_NS) {
-            final long sleepNs = (FRAME_NS - timeleft + sleepingtest);
+        if (timeleft < framens) {
+            final long sleepNs = (framens - timeleft + sleepingtest);
             if (sleepNs < 0) {
                 return;
                 //don't sleep at all.
@@ -51,6 +55,18 @@ public class FrameLimiterImpl implements FrameLimiterInterface {
         }
     }
 
+    private double rateAdjust() {
+        //dynamic rate control: run a little slower while there's more sound
+        //queued than the target and a little faster while there's less, so
+        //the audio never has to skip or stretch to stay in step
+        final APU apu = nes.getApu();
+        if (apu == null) {
+            return 1;
+        }
+        final double error = apu.bufferFill() - 1;
+        return 1 + Math.max(-MAX_RATE_ADJUST, Math.min(MAX_RATE_ADJUST, error * MAX_RATE_ADJUST));
+    }
+
     @Override
     public void sleepFixed() {
         try {
@@ -0,0 +1,258 @@
+package com.grapeshot.halfnes.ui;
+
+import com.grapeshot.halfnes.NES;
+import com.grapeshot.halfnes.audio.AudioOutInterface;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+
+/**
+ * Runs a number of independent headless NES instances side by side, stepping
+ * all of them at once on an executor. Each step runs every instance for some
+ * frames with the given controller input held down, then copies the last frame
+ * and the work RAM of each into buffers owned by the farm, so reading them
+ * back doesn't allocate anything. Only the last frame of each step gets drawn,
+ * the ones before it run with the PPU's pixel output switched off.
+ *
+ * The executor decides what threads the instances run on: a fixed pool of
+ * platform threads by default, or anything the caller passes in (on newer
+ * JVMs, Executors.newVirtualThreadPerTaskExecutor() works too).
+ */
+public class HeadlessFarm implements AutoCloseable {
+
+    private final Instance[] instances;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    //the stepping thread plus one party per instance
+    private final Phaser done;
+    private volatile boolean drawFrames = true;
+    private boolean closed = false;
+
+    /**
+     * Creates a farm running the rom in each instance, on a thread pool with
+     * a thread per available processor that's shut down by close().
+     */
+    public HeadlessFarm(String rom, int count) {
+        this(rom, count, Executors.newFixedThreadPool(
+                Math.min(count, Runtime.getRuntime().availableProcessors())), true);
+    }
+
+    /**
+     * Creates a farm running the rom in each instance on the given executor,
+     * which the caller stays responsible for shutting down.
+     */
+    public HeadlessFarm(String rom, int count, ExecutorService executor) {
+        this(rom, count, executor, false);
+    }
+
+    private HeadlessFarm(String rom, int count, ExecutorService executor, boolean ownsExecutor) {
+        if (count < 1) {
+            throw new IllegalArgumentException("A farm needs at least one instance");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        instances = new Instance[count];
+        for (int i = 0; i < count; ++i) {
+            instances[i] = new Instance(rom);
+        }
+        done = new Phaser(count + 1);
+    }
+
+    public int size() {
+        return instances.length;
+    }
+
+    /**
+     * Turns drawing the last frame of each step on or off. With it off the
+     * instances don't draw anything and getFrame keeps returning whatever was
+     * drawn last, which is faster if only the RAM is of interest.
+     */
+    public void setDrawFrames(boolean drawFrames) {
+        this.drawFrames = drawFrames;
+    }
+
+    /**
+     * Runs every instance for the given number of frames, and waits for all
+     * of them to finish.
+     *
+     * @param inputs controller 1 buttons for each instance, held for the whole
+     * step, in the order the NES reads them (bit 0 is A, bit 7 is Right). May
+     * be null to keep the buttons from the last step.
+     * @param frames how many frames to run
+     * @throws IllegalStateException if the farm has been closed
+     * @throws java.util.concurrent.RejectedExecutionException if the executor
+     * won't take an instance. The ones it did take are waited for first.
+     */
+    public synchronized void step(int[] inputs, int frames) {
+        if (closed) {
+            throw new IllegalStateException("Farm is closed");
+        }
+        if (inputs != null && inputs.length != instances.length) {
+            throw new IllegalArgumentException("Expected " + instances.length
+                    + " inputs, got " + inputs.length);
+        }
+        for (int i = 0; i < instances.length; ++i) {
+            final Instance inst = instances[i];
+            if (inputs != null) {
+                inst.controller1.setButtons(inputs[i]);
+            }
+            inst.frames = frames;
+        }
+        int submitted = 0;
+        try {
+            for (; submitted < instances.length; ++submitted) {
+                executor.execute(instances[submitted].stepper);
+            }
+        } catch (RuntimeException e) {
+            //arrive for the instances that never got submitted, so the phase
+            //still ends once the others are done and the next step lines up
+            for (int i = submitted; i < instances.length; ++i) {
+                done.arrive();
+            }
+            done.arriveAndAwaitAdvance();
+            throw e;
+        }
+        done.arriveAndAwaitAdvance();
+        for (Instance inst : instances) {
+            if (inst.error != null) {
+                final Throwable t = inst.error;
+                inst.error = null;
+                throw new IllegalStateException("Instance failed while stepping", t);
+            }
+        }
+    }
+
+    /**
+     * Returns the last frame the instance rendered, as NES color numbers like
+     * GUIInterface.setFrame gets them. The array is reused by the next step.
+     */
+    public int[] getFrame(int instance) {
+        return instances[instance].frame;
+    }
+
+    /**
+     * Returns a copy of the instance's 2k work RAM taken at the end of the last
+     * step. The array is reused by the next step.
+     */
+    public byte[] getRam(int instance) {
+        return instances[instance].ram;
+    }
+
+    public PuppetController getController2(int instance) {
+        return instances[instance].controller2;
+    }
+
+    /**
+     * Gives direct access to one instance. Don't touch it while a step is
+     * running.
+     */
+    public NES getNes(int instance) {
+        return instances[instance].nes;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private class Instance implements GUIInterface {
+
+        private final NES nes;
+        private final PuppetController controller1 = new PuppetController(),
+                controller2 = new PuppetController();
+        private final int[] frame = new int[240 * 256];
+        private final byte[] ram = new byte[2048];
+        private final Runnable stepper = this::runFrames;
+        private int frames;
+        private volatile Throwable error;
+
+        Instance(String rom) {
+            nes = new NES(new NullAudio());
+            //no .sav files, every instance starts the same way and none of
+            //them write over each other's saves
+            nes.setConfig(nes.getConfig().withSaveSRAM(false));
+            nes.setGui(this);
+            nes.loadROM(rom);
+            nes.setControllers(controller1, controller2);
+        }
+
+        private void runFrames() {
+            try {
+                for (int i = 0; i < frames; ++i) {
+                    nes.getPpu().setDrawing(drawFrames && i == frames - 1);
+                    nes.frameAdvance();
+                }
+                final byte[] wram = nes.getCPURAM().getWram();
+                System.arraycopy(wram, 0, ram, 0, ram.length);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                done.arrive();
+            }
+        }
+
+        @Override
+        public NES getNes() {
+            return nes;
+        }
+
+        @Override
+        public void setNES(NES nes) {
+            //each instance keeps the NES it was made with
+        }
+
+        @Override
+        public void setFrame(int[] frame, int[] bgcolor, boolean dotcrawl) {
+            System.arraycopy(frame, 0, this.frame, 0, this.frame.length);
+        }
+
+        @Override
+        public void messageBox(String message) {
+            System.err.println(message);
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void render() {
+        }
+
+        @Override
+        public void loadROMs(String path) {
+        }
+    }
+
+    private static class NullAudio implements AudioOutInterface {
+
+        //sound is generated but goes nowhere, and no audio line is opened
+        @Override
+        public void outputSample(int sample) {
+        }
+
+        @Override
+        public void flushFrame(boolean waitIfBufferFull) {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void resume() {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean bufferHasLessThan(int samples) {
+            return false;
+        }
+    }
+}
@@ -66,7 +66,7 @@ public class HeadlessUI implements GUIInterface {
     @Override
     public void setFrame(int[] frame, int[] bgcolor, boolean dotcrawl) {
         if (renderFrames) {
-            this.lastFrame = renderer.render(frame, bgcolor, dotcrawl);
+            this.lastFrame = renderer.render(frame, bgcolor, dotcrawl, nes.getPpu().getLineVersions());
         }
     }
 
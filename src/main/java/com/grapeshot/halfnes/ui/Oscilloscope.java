@@ -110,4 +110,13 @@ public class Oscilloscope implements AudioOutInterface {
             return false;
         }
     }
+
+    @Override
+    public double bufferFill() {
+        if (!(iface == null)) {
+            return iface.bufferFill();
+        } else {
+            return 1;
+        }
+    }
 }
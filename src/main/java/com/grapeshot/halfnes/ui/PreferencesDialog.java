@@ -49,6 +49,7 @@ public class PreferencesDialog extends javax.swing.JDialog {
         jSpinnerScale.setValue(screenScaling);
         jSampleRateBox.setSelectedItem(Integer.toString(prefs.getInt("sampleRate", 44100)));
         jCheckBoxSmoothVideo.setSelected(prefs.getBoolean("smoothScaling", false));
+        jCheckBoxPixelArt.setSelected(prefs.getBoolean("pixelArtScaling", false));
         volumeSlider.setValue(prefs.getInt("outputvol", 13107));
         jRegionBox.setSelectedIndex(prefs.getInt("region", 0));
         //0-> auto, 1-> NTSC, 2-> PAL, 3-> Dendy
@@ -82,6 +83,7 @@ public class PreferencesDialog extends javax.swing.JDialog {
         jSpinnerScale = new javax.swing.JSpinner();
         jLabel20 = new javax.swing.JLabel();
         jCheckBoxSmoothVideo = new javax.swing.JCheckBox();
+        jCheckBoxPixelArt = new javax.swing.JCheckBox();
         jCheckBoxSleep = new javax.swing.JCheckBox();
         jCheckBoxShowScope = new javax.swing.JCheckBox();
         jCheckBoxNTView = new javax.swing.JCheckBox();
@@ -162,6 +164,8 @@ public class PreferencesDialog extends javax.swing.JDialog {
             }
         });
 
+        jCheckBoxPixelArt.setText("Use Pixel Art Scaling");
+
         jCheckBoxSleep.setText("Sleep Between Frames");
         jCheckBoxSleep.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -208,6 +212,7 @@ public class PreferencesDialog extends javax.swing.JDialog {
                                     .addComponent(jCheckBoxNTSC)
                                     .addComponent(jCheckMaintainAspect)
                                     .addComponent(jCheckBoxSmoothVideo)
+                                    .addComponent(jCheckBoxPixelArt)
                                     .addComponent(jCheckBoxSleep)
                                     .addComponent(jCheckBoxShowScope)
                                     .addComponent(jCheckBoxNTView))
@@ -266,6 +271,8 @@ public class PreferencesDialog extends javax.swing.JDialog {
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(jCheckBoxSmoothVideo)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jCheckBoxPixelArt)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(jCheckMaintainAspect)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(jCheckBoxNTSC)
@@ -306,6 +313,7 @@ public class PreferencesDialog extends javax.swing.JDialog {
         prefs.putBoolean("Sleep", jCheckBoxSleep.isSelected());
         screenScaling = (Integer) (jSpinnerScale.getModel().getValue());
         prefs.putBoolean("smoothScaling", jCheckBoxSmoothVideo.isSelected());
+        prefs.putBoolean("pixelArtScaling", jCheckBoxPixelArt.isSelected());
         prefs.putBoolean("showScope", jCheckBoxShowScope.isSelected());
         prefs.putBoolean("ntView", jCheckBoxNTView.isSelected());
         prefs.putInt("screenScaling", screenScaling);
@@ -353,6 +361,7 @@ public class PreferencesDialog extends javax.swing.JDialog {
     private javax.swing.JButton jButtonOK;
     private javax.swing.JCheckBox jCheckBoxNTSC;
     private javax.swing.JCheckBox jCheckBoxNTView;
+    private javax.swing.JCheckBox jCheckBoxPixelArt;
     private javax.swing.JCheckBox jCheckBoxShowScope;
     private javax.swing.JCheckBox jCheckBoxSleep;
     private javax.swing.JCheckBox jCheckBoxSmoothVideo;
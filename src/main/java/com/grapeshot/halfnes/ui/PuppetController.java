@@ -41,6 +41,11 @@ public class PuppetController implements ControllerInterface {
         controllerbyte = 0;
     }
 
+    public void setButtons(int buttons) {
+        //all 8 buttons at once, bit 0 (A) is read out first
+        controllerbyte = buttons & 0xff;
+    }
+
     public void releaseButton(Button button) {
         switch (button) {
             case UP:
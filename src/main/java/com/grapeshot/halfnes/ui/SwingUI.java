@@ -4,14 +4,17 @@
  */
 package com.grapeshot.halfnes.ui;
 
+import com.grapeshot.halfnes.EmulatorConfig;
 import com.grapeshot.halfnes.FileUtils;
 import com.grapeshot.halfnes.NES;
 import com.grapeshot.halfnes.PrefsSingleton;
 import com.grapeshot.halfnes.video.RGBRenderer;
 import com.grapeshot.halfnes.cheats.ActionReplay;
 import com.grapeshot.halfnes.cheats.ActionReplayGui;
+import com.grapeshot.halfnes.mappers.Mapper;
 import com.grapeshot.halfnes.video.NTSCRenderer;
 import com.grapeshot.halfnes.video.Renderer;
+import com.grapeshot.halfnes.video.ScaleNxRenderer;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
@@ -26,6 +29,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.prefs.Preferences;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -46,15 +50,22 @@ public class SwingUI extends JFrame implements GUIInterface {
     private int NES_HEIGHT, NES_WIDTH;
     private Renderer renderer;
     private final ControllerImpl padController1, padController2;
+    //frames go from the emulation thread to the render thread through this,
+    //so filtering and showing one overlaps with emulating the next
+    private final FrameExchange frames = new FrameExchange();
+    private final Thread renderThread = new Thread(this::renderFrames, "Render thread");
 
     public SwingUI() {
         nes = new NES(this);
+        nes.setConfig(configFromPrefs());
         screenScaleFactor = PrefsSingleton.get().getInt("screenScaling", 2);
         padController1 = new ControllerImpl(this, 0);
         padController2 = new ControllerImpl(this, 1);
         nes.setControllers(padController1, padController2);
         padController1.startEventQueue();
         padController2.startEventQueue();
+        renderThread.setDaemon(true);
+        renderThread.start();
     }
 
     @Override
@@ -76,6 +87,12 @@ public class SwingUI extends JFrame implements GUIInterface {
         if (PrefsSingleton.get().getBoolean("TVEmulation", false)) {
             renderer = new NTSCRenderer();
             NES_WIDTH = 302;
+        } else if (PrefsSingleton.get().getBoolean("pixelArtScaling", false)
+                && screenScaleFactor > 1) {
+            //scale by 3 when the window is a multiple of 3 times, otherwise
+            //by 2, and drawImage does the rest
+            renderer = new ScaleNxRenderer(screenScaleFactor % 3 == 0 ? 3 : 2);
+            NES_WIDTH = 256;
         } else {
             renderer = new RGBRenderer();
             NES_WIDTH = 256;
@@ -403,11 +420,10 @@ public class SwingUI extends JFrame implements GUIInterface {
     int frameskip = 0;
 
     @Override
-    public final synchronized void setFrame(final int[] nextframe, final int[] bgcolors, boolean dotcrawl) {
+    public final void setFrame(final int[] nextframe, final int[] bgcolors, boolean dotcrawl) {
         //todo: stop running video filters while paused!
-        //also move video filters into a worker thread because they
-        //don't really depend on emulation state at all. Yes this is going to
-        //cause more lag but it will hopefully get back up to playable speed with NTSC filter
+        //only copies the frame, the render thread does the filtering and
+        //drawing while the next frame is emulated
 
         frametimes[frametimeptr] = nes.getFrameTime();
         ++frametimeptr;
@@ -427,8 +443,46 @@ public class SwingUI extends JFrame implements GUIInterface {
                     fps));
         }
         if (nes.framecount % (frameskip + 1) == 0) {
-            frame = renderer.render(nextframe, bgcolors, dotcrawl);
-            render();
+            final FrameExchange.Frame f = frames.filling();
+            final int[] versions = nes.getPpu().getLineVersions();
+            System.arraycopy(nextframe, 0, f.pixels, 0, f.pixels.length);
+            System.arraycopy(bgcolors, 0, f.bgcolors, 0, f.bgcolors.length);
+            System.arraycopy(versions, 0, f.lineversions, 0, f.lineversions.length);
+            f.versionsfrom = versions;
+            f.dotcrawl = dotcrawl;
+            frames.publish();
+        }
+    }
+
+    private void renderFrames() {
+        //the render thread. Gives the renderer its own copy of the line
+        //versions that stays the same array as long as the PPU does.
+        int[] versions = null, versionsfrom = null;
+        try {
+            while (true) {
+                final FrameExchange.Frame f = frames.take();
+                if (f.versionsfrom != versionsfrom) {
+                    versionsfrom = f.versionsfrom;
+                    versions = new int[f.lineversions.length];
+                }
+                System.arraycopy(f.lineversions, 0, versions, 0, versions.length);
+                final Renderer r;
+                synchronized (this) {
+                    r = renderer;
+                }
+                if (r == null) {
+                    continue;
+                }
+                final BufferedImage image = r.render(f.pixels, f.bgcolors, f.dotcrawl, versions);
+                synchronized (this) {
+                    frame = image;
+                    if (buffer != null) {
+                        render();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            //done
         }
     }
 
@@ -476,10 +530,26 @@ public class SwingUI extends JFrame implements GUIInterface {
         dialog.setVisible(true);
         if (dialog.okClicked()) {
             setRenderOptions();
-            nes.setParameters();
+            nes.setConfig(configFromPrefs());
         }
     }
 
+    private static EmulatorConfig configFromPrefs() {
+        final Preferences prefs = PrefsSingleton.get();
+        final int region = prefs.getInt("region", 0);
+        return EmulatorConfig.DEFAULTS
+                //0 is auto detect, then ntsc, pal, dendy
+                .withRegion(region > 0 ? Mapper.TVType.values()[region - 1] : null)
+                .withSleep(prefs.getBoolean("Sleep", true))
+                .withSoundEnable(prefs.getBoolean("soundEnable", true))
+                .withSoundFiltering(prefs.getBoolean("soundFiltering", true))
+                .withSampleRate(prefs.getInt("sampleRate", 44100))
+                .withOutputVolume(prefs.getInt("outputvol", 13107))
+                .withAudioLatency(prefs.getInt("audioLatency", 50))
+                .withShowScope(prefs.getBoolean("showScope", false))
+                .withNtView(prefs.getBoolean("ntView", false));
+    }
+
     private void showControlsDialog() {
         final ControlsDialog dialog = new ControlsDialog(this);
         dialog.setVisible(true);
@@ -580,6 +650,8 @@ public class SwingUI extends JFrame implements GUIInterface {
             savewindowposition();
             padController1.stopEventQueue();
             padController2.stopEventQueue();
+            //a frame it's rendering right now still gets shown, then it stops
+            renderThread.interrupt();
             nes.quit();
         }
 
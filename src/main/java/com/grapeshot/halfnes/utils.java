@@ -35,6 +35,18 @@ public class utils {
         return s;
     }
 
+    public static int interleave(int low, int high) {
+        //spreads out 2 bytes so bit n of low ends up in bit 2n and bit n of
+        //high in bit 2n + 1, which turns 2 bit planes into 2 bit pixels
+        low = (low | (low << 4)) & 0x0f0f;
+        low = (low | (low << 2)) & 0x3333;
+        low = (low | (low << 1)) & 0x5555;
+        high = (high | (high << 4)) & 0x0f0f;
+        high = (high | (high << 2)) & 0x3333;
+        high = (high | (high << 1)) & 0x5555;
+        return low | (high << 1);
+    }
+
     public static int reverseByte(int nibble) {
         //reverses 8 bits packed into int.
         return (Integer.reverse(nibble) >> 24) & 0xff;
@@ -105,6 +117,15 @@ public class utils {
         System.err.print(s.toString());
     }
 
+    public static byte[] toBytes(final int[] a) {
+        //packs an array of byte values, like a table written out as ints
+        byte[] b = new byte[a.length];
+        for (int i = 0; i < a.length; ++i) {
+            b[i] = (byte) a[i];
+        }
+        return b;
+    }
+
     public static int max(final int[] array) {
         int m = array[0];
         for (Integer i : array) {
@@ -5,7 +5,7 @@
 package com.grapeshot.halfnes.video;
 
 import java.awt.image.BufferedImage;
-import com.grapeshot.halfnes.utils;
+import java.awt.image.DataBufferInt;
 import com.grapeshot.halfnes.utils;
 
 /**
@@ -15,16 +15,31 @@ import com.grapeshot.halfnes.utils;
 //Direct port of Bisqwit's code on the wiki. (probably just as slow, we'll see.)
 //yep, it's WORSE
 //the expensive part is the Math function calls of course
+//so now everything that only depends on the pixel and the phase is looked up
+//in tables made once, and the gamma curve is a search through the points where
+//the output goes up a step. The direct port is still there to compare against.
 public class AltNTSCRenderer extends Renderer {
 
+    private final boolean tables;
+
     public AltNTSCRenderer() {
+        this(true);
+    }
+
+    /**
+     * @param tables false to run the direct port, with the Math calls for
+     * every sample, instead of the lookup tables. Only useful for checking the
+     * tables against.
+     */
+    public AltNTSCRenderer(boolean tables) {
+        this.tables = tables;
         frame_width = 604;
         init_images();
 //        for (int i = 0; i < 12; ++i) {
 //            System.err.println(inColorPhase( 3, i));
 //        };
     }
-    private final int[] frame = new int[width * 240];
+    private int[] frame;
     private int frame_ptr = 0;
     private int frame_ctr;
     private int phase;
@@ -35,28 +50,144 @@ public class AltNTSCRenderer extends Renderer {
     //0x00    0x10    0x20    0x30
     };
     private final static int SAMPLESPERPIXEL = 8;
+    private final static int SAMPLES = 256 * SAMPLESPERPIXEL;
+    private final static int width = 604;
+    //the signal level over 12 for every pixel value (color, level and
+    //emphasis bits) at every phase
+    private final static double[][] signals = genSignals();
+    //cos and sin of the subcarrier at each sample of a line, for each phase
+    //the line can start at
+    private final static double[][] cosines = genWave(true), sines = genWave(false);
+    //first and last sample of the window each output pixel averages over
+    private final static int[] windowbegin = new int[width], windowend = new int[width];
+    private final static double gammaexp = 2.2f / 2.0f;
+    //smallest input that makes gamma corrected output reach each step
+    private final static double[] gammasteps = genGammaSteps();
+
+    static {
+        for (int x = 0; x < width; ++x) {
+            int center = x * SAMPLES / width + 0;
+            windowbegin[x] = Math.max(center - 6, 0);
+            windowend[x] = Math.min(center + 6, SAMPLES);
+        }
+    }
+
+    private static double[][] genSignals() {
+        final double[][] tbl = new double[512][12];
+        for (int pixel = 0; pixel < 512; ++pixel) {
+            for (int p = 0; p < 12; ++p) {
+                tbl[pixel][p] = signal(pixel, p) / 12.;
+            }
+        }
+        return tbl;
+    }
+
+    private static double[][] genWave(boolean cos) {
+        //lines start at a whole number phase, so the decoder's phase
+        //(start + 3.9 - 0.3) % 12 only has 12 possible values
+        final double[][] tbl = new double[12][SAMPLES];
+        for (int start = 0; start < 12; ++start) {
+            final double phi = (start + 3.9 - 0.3) % 12;
+            for (int p = 0; p < SAMPLES; ++p) {
+                //reduced mod 12 first, so every line gets the same values
+                final double angle = Math.PI * (phi + p % 12) / 6.;
+                tbl[start][p] = cos ? Math.cos(angle) : Math.sin(angle);
+            }
+        }
+        return tbl;
+    }
+
+    private static double[] genGammaSteps() {
+        //steps[n] is the smallest positive input the direct formula turns
+        //into n or more, found exactly by walking from a first guess
+        final double[] steps = new double[256];
+        for (int n = 1; n < 256; ++n) {
+            double t = Math.pow(n / 255.95, 1 / gammaexp);
+            while (t > 0 && gammaOut(t) >= n) {
+                t = Math.nextDown(t);
+            }
+            while (gammaOut(t) < n) {
+                t = Math.nextUp(t);
+            }
+            steps[n] = t;
+        }
+        return steps;
+    }
+
+    private static int gammaOut(double v) {
+        return clamp(255.95 * gammafix(v));
+    }
+
+    private static int gammaLevel(final double v) {
+        //same as gammaOut, with a binary search instead of Math.pow
+        if (v <= 0) {
+            return 0;
+        }
+        int lo = 0, hi = 255;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >> 1;
+            if (gammasteps[mid] <= v) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
 
     @Override
     public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl) {
         ++frame_ctr;
-        if ((frame_ctr & 1) == 0) {
-            phase = 0;
-        } else {
-            phase = 6;
-        }
-        for (int i = 0; i < 240; ++i) {
+        final int start = ((frame_ctr & 1) == 0) ? 0 : 6;
+        //straight into the next image, and only the lines that aren't clipped
+        final BufferedImage image = imgs[nextImage()];
+        frame = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final int last = clip + Math.min(height, image.getHeight());
+        for (int i = clip; i < last; ++i) {
+            //every line moves the phase on by as many samples as it has
+            phase = start + i * SAMPLES;
+            frame_ptr = (i - clip) * width;
             double phi = (phase + 3.9 - 0.3) % 12;
-            for (int j = 0; j < 256; ++j) {
-                ntsc_render(nespixels[i * 256 + j]);
+            if (tables) {
+                decodeLine(nespixels, i << 8, phase % 12);
+            } else {
+                for (int j = 0; j < 256; ++j) {
+                    ntsc_render(nespixels[i * 256 + j]);
+                }
+                ntsc_decode(phi);
+                ntsc_buf_ptr = 0;
             }
-            ntsc_decode(phi);
-            ntsc_buf_ptr = 0;
         }
         frame_ptr = 0;
-        return getBufferedImage(frame);
+        return image;
     }
 
-    private void ntsc_render(int pixel) {
+    private void decodeLine(final int[] nespixels, final int start, final int linephase) {
+        //the same sums as ntsc_render and ntsc_decode, in the same order
+        final double[] samples = signal_levels;
+        for (int j = 0, p = 0; j < 256; ++j) {
+            final double[] signal = signals[nespixels[start + j] & 0x1ff];
+            for (int k = 0; k < SAMPLESPERPIXEL; ++k, ++p) {
+                samples[p] = signal[(linephase + p) % 12];
+            }
+        }
+        final double[] cos = cosines[linephase], sin = sines[linephase];
+        for (int x = 0; x < width; ++x) {
+            double y = 0, i = 0, q = 0;
+            for (int p = windowbegin[x]; p < windowend[x]; ++p) {
+                final double level = samples[p];
+                y += level;
+                i += level * cos[p];
+                q += level * sin[p];
+            }
+            frame[frame_ptr++] = 0xff000000
+                    | 0x10000 * gammaLevel(y + 0.946882f * i + 0.623557f * q)
+                    + 0x00100 * gammaLevel(y + -0.274788f * i + -0.635691f * q)
+                    + 0x00001 * gammaLevel(y + -1.108545f * i + 1.709007f * q);
+        }
+    }
+
+    private static double signal(int pixel, int phase) {
         int color = pixel & 0xf;
         int level = (pixel >> 4) & 3;
         int emphasis = (pixel >> 6);
@@ -70,25 +201,28 @@ public class AltNTSCRenderer extends Renderer {
         } else if (color > 12) {
             high = low;
         }
-        for (int i = 0; i < SAMPLESPERPIXEL; ++i, ++phase) {
-            double signal = inColorPhase(color, phase) ? high : low;
-            if (emphasis != 0) {
-                if ((((emphasis & (utils.BIT0)) != 0) && inColorPhase(0, phase))
-                        || (((emphasis & (utils.BIT1)) != 0) && inColorPhase(4, phase))
-                        || (((emphasis & (utils.BIT2)) != 0) && inColorPhase(8, phase))) {
-                    signal *= attenuation;
-                }
+        double signal = inColorPhase(color, phase) ? high : low;
+        if (emphasis != 0) {
+            if ((((emphasis & (utils.BIT0)) != 0) && inColorPhase(0, phase))
+                    || (((emphasis & (utils.BIT1)) != 0) && inColorPhase(4, phase))
+                    || (((emphasis & (utils.BIT2)) != 0) && inColorPhase(8, phase))) {
+                signal *= attenuation;
             }
-            signal_levels[ntsc_buf_ptr++] = signal;
+        }
+        return signal;
+    }
+
+    private void ntsc_render(int pixel) {
+        for (int i = 0; i < SAMPLESPERPIXEL; ++i, ++phase) {
+            signal_levels[ntsc_buf_ptr++] = signal(pixel, phase);
         }
     }
 
     private static boolean inColorPhase(final int color, final int phase) {
         return (color + phase) % 12 < 6;
     }
-    private final double[] signal_levels = new double[256 * SAMPLESPERPIXEL];
+    private final double[] signal_levels = new double[SAMPLES];
     private int ntsc_buf_ptr = 0;
-    private final static int width = 604;
 
     private void ntsc_decode(final double phase) {
         for (int x = 0; x < width; ++x) {
@@ -0,0 +1,231 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes.video;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size cache of rendered lines, keyed by a long hash of whatever the
+ * line was made from. All the storage is allocated up front and lines are
+ * copied in and out, so nothing is allocated while it runs and the memory use
+ * doesn't depend on the garbage collector.
+ *
+ * The slots are split into stripes, each with its own lock, picked by the key,
+ * so threads rendering different lines rarely wait on each other. Each stripe
+ * finds keys through a small open addressed hash table, never more than half
+ * full, so a lookup costs about the same however big the cache is. Inside a
+ * stripe, eviction is CLOCK: every hit marks the slot, and the hand clears
+ * marks as it goes around until it finds an unmarked slot to reuse. The line
+ * is copied while the stripe is locked, or another thread could replace it
+ * halfway through.
+ */
+public final class LineCache {
+
+    private static final int STRIPES = 16;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final int width;
+
+    private static final class Stripe {
+
+        final long[] keys;
+        final int[][] lines;
+        final boolean[] referenced;
+        //hash table from key to slot + 1, 0 where it's empty. Linear
+        //probing, and at least twice as big as the slots so there's always
+        //an empty entry to stop at.
+        final int[] index;
+        final int indexmask;
+        int hand, size;
+        long hits, misses, evictions;
+
+        Stripe(int slots, int width) {
+            keys = new long[slots];
+            lines = new int[slots][width];
+            referenced = new boolean[slots];
+            int indexsize = 4;
+            while (indexsize < slots * 2) {
+                indexsize <<= 1;
+            }
+            index = new int[indexsize];
+            indexmask = indexsize - 1;
+        }
+
+        private int home(long key) {
+            //different bits than the stripe was picked with
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & indexmask;
+        }
+
+        int find(long key) {
+            for (int i = home(key);; i = (i + 1) & indexmask) {
+                final int slot = index[i] - 1;
+                if (slot < 0 || keys[slot] == key) {
+                    return slot;
+                }
+            }
+        }
+
+        void add(long key, int slot) {
+            keys[slot] = key;
+            int i = home(key);
+            while (index[i] != 0) {
+                i = (i + 1) & indexmask;
+            }
+            index[i] = slot + 1;
+        }
+
+        void remove(long key) {
+            int hole = home(key);
+            while (keys[index[hole] - 1] != key) {
+                hole = (hole + 1) & indexmask;
+            }
+            //move later entries of the same run back into the hole, unless
+            //that would put them in front of where they hash to
+            for (int i = (hole + 1) & indexmask; index[i] != 0; i = (i + 1) & indexmask) {
+                final int h = home(keys[index[i] - 1]);
+                if (((i - h) & indexmask) >= ((i - hole) & indexmask)) {
+                    index[hole] = index[i];
+                    hole = i;
+                }
+            }
+            index[hole] = 0;
+        }
+
+        int victim() {
+            if (size < keys.length) {
+                return size++;
+            }
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % keys.length;
+            }
+            final int slot = hand;
+            hand = (hand + 1) % keys.length;
+            ++evictions;
+            remove(keys[slot]);
+            return slot;
+        }
+    }
+
+    /**
+     * @param capacity how many lines to keep, rounded up to a multiple of 16
+     * @param width how many ints each line has
+     */
+    public LineCache(int capacity, int width) {
+        this.width = width;
+        final int slots = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe(slots, width);
+        }
+    }
+
+    private Stripe stripe(long key) {
+        //the keys are hashes already, but mix the high bits in anyway
+        return stripes[(int) (key ^ (key >>> 32) ^ (key >>> 17)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Copies the line with the given key into dest, if it's in the cache.
+     *
+     * @return true if it was there
+     */
+    public boolean get(long key, int[] dest, int destoffset) {
+        final Stripe s = stripe(key);
+        synchronized (s) {
+            final int slot = s.find(key);
+            if (slot < 0) {
+                ++s.misses;
+                return false;
+            }
+            ++s.hits;
+            s.referenced[slot] = true;
+            System.arraycopy(s.lines[slot], 0, dest, destoffset, width);
+            return true;
+        }
+    }
+
+    /**
+     * Stores a copy of the line under the given key, evicting another one if
+     * the key's stripe is full.
+     */
+    public void put(long key, int[] line, int offset) {
+        final Stripe s = stripe(key);
+        synchronized (s) {
+            int slot = s.find(key);
+            if (slot < 0) {
+                //two threads can miss on the same line at once, then the
+                //second one just overwrites the first's copy
+                slot = s.victim();
+                s.add(key, slot);
+                s.referenced[slot] = false;
+            }
+            System.arraycopy(line, offset, s.lines[slot], 0, width);
+        }
+    }
+
+    /**
+     * Throws away every line, but keeps the counters.
+     */
+    public void clear() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                Arrays.fill(s.referenced, false);
+                Arrays.fill(s.index, 0);
+                s.size = 0;
+                s.hand = 0;
+            }
+        }
+    }
+
+    public int capacity() {
+        return stripes.length * stripes[0].keys.length;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size;
+            }
+        }
+        return n;
+    }
+
+    public long getHits() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.hits;
+            }
+        }
+        return n;
+    }
+
+    public long getMisses() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.misses;
+            }
+        }
+        return n;
+    }
+
+    public long getEvictions() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.evictions;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "LineCache " + size() + "/" + capacity() + " lines, "
+                + getHits() + " hits, " + getMisses() + " misses, "
+                + getEvictions() + " evictions";
+    }
+}
@@ -7,8 +7,6 @@ package com.grapeshot.halfnes.video;
 import java.awt.image.*;
 import java.util.*;
 
-import java.util.zip.CRC32;
-
 /**
  *
  * @author Andrew
@@ -57,6 +55,9 @@ public class NTSCRenderer extends Renderer {
     //private final static float sync = -0.359f;
     private int frames = 0;
     private final float[] i_filter = new float[12], q_filter = new float[12];
+    //the same filters laid out along the whole line for each starting offset,
+    //so the demodulation loop is a plain multiply the JIT can vectorize
+    private final float[][] i_lines = new float[12][2656 - 240], q_lines = new float[12][2656 - 240];
     private final static int[] colortbl = genColorCorrectTbl();
 
     public NTSCRenderer() {
@@ -69,6 +70,12 @@ public class NTSCRenderer extends Renderer {
             i_filter[j] = (float) (-col_adjust * Math.cos(angle));
             q_filter[j] = (float) (col_adjust * Math.sin(angle));
         }
+        for (int offset = 0; offset < 12; ++offset) {
+            for (int cbst = cbstphase[offset], j = 0; cbst < 2656 - 240 - 50; ++cbst, ++j, j %= 12) {
+                i_lines[offset][cbst] = i_filter[j];
+                q_lines[offset][cbst] = q_filter[j];
+            }
+        }
     }
 
     public static int[] genColorCorrectTbl() {
@@ -101,8 +108,14 @@ public class NTSCRenderer extends Renderer {
     }
 
     public final float[] ntsc_encode(final int[] nescolors, final int offset, final int scanline, final int bgcolor) {
-        //part one of the process. creates a 2728 pxl array of floats representing
-        //ntsc version of scanline passed to it. Meant to be called 240x a frame
+        final float[] sample = new float[2728 - 240];
+        encode(nescolors, 0, offset, bgcolor, sample);
+        return sample;
+    }
+
+    private void encode(final int[] nespixels, final int start, final int offset, final int bgcolor, final float[] sample) {
+        //part one of the process. fills a 2728 pxl array of floats representing
+        //ntsc version of the scanline starting at start. Meant to be called 240x a frame
 
         //todo:
         //-make this encode an entire frame at a time
@@ -123,7 +136,8 @@ public class NTSCRenderer extends Renderer {
         //dot 2656-2720:black
         //but then i'm going to chop off before dot 240 and after 2656 b/c it's not used
         //so after this comment, add 240 to any num. in this for dot #
-        final float[] sample = new float[2728 - 240];
+        //(the parts of sample that aren't filled in here are never written
+        //by anything, so they stay 0 when it's reused)
         for (i = 400 - 240; i < 520 - 240; ++i) { //bg color at beginning
             final int phase = (i + offset) % 12;
             final int hue = colorphases[col][phase];
@@ -136,7 +150,7 @@ public class NTSCRenderer extends Renderer {
         }
         for (i = 520 - 240; i < 2568 - 240; ++i) { //picture
             if ((i & 7) == 0) {
-                col = nescolors[(((i - (520 - 240)) >> 3))];
+                col = nespixels[start + ((i - (520 - 240)) >> 3)];
                 if ((col & 0xf) > 0xd) {
                     col = 0x0f;
                 }
@@ -149,47 +163,90 @@ public class NTSCRenderer extends Renderer {
             sample[i] = lumas[hue][lum][coloremph[emphasis][phase]];
         }
         sample[2728 - 241] = offset; //hack to not have to deal with a tuple
-        return sample;
     }
     public final static float chroma_filterfreq = 3579000.f, pixel_rate = 42950000.f;
     private final static int[] cbstphase = {240 - 240, 0, 250 - 240, 0, 248 - 240, 0, 246 - 240, 0, 244 - 240, 0, 242 - 240, 0};
     //starting point for color burst (depends on offset of previous line, even values not used in a progressive signal)
 
     public final int[] ntsc_decode(final float[] ntsc, final int offset) {
+        final int[] line = new int[frame_w];
+        decode(ntsc, offset, new Scratch(), line, 0);
+        return line;
+    }
+
+    /**
+     * The buffers one worker thread needs to encode and decode a line, kept
+     * around so rendering doesn't allocate anything.
+     */
+    private static final class Scratch {
+
+        final float[] sample = new float[2728 - 240];
         final float[] chroma = new float[2656 - 240];
         final float[] luma = new float[2656 - 240];
         final float[] eye = new float[2656 - 240];
         final float[] queue = new float[2656 - 240];
-        final int[] line = new int[frame_w];
+        final int[] red = new int[frame_w];
+        final int[] green = new int[frame_w];
+        final int[] blue = new int[frame_w];
+    }
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private void decode(final float[] ntsc, final int offset, final Scratch s, final int[] out, final int outoffset) {
+        final float[] chroma = s.chroma;
+        final float[] luma = s.luma;
+        final float[] eye = s.eye;
+        final float[] queue = s.queue;
+        //only part of these gets written below, the rest has to start at 0
+        Arrays.fill(eye, 0);
+        Arrays.fill(queue, 0);
 
         //decodes one scan line of ntsc video and outputs as rgb packed in int
         //uses the cheap TV method, which is filtering the chroma from the luma w/o
         //combing or buffering previous lines
         box_filter(ntsc, luma, chroma, 12);
 
-        for (int cbst = cbstphase[offset], j = 0; cbst < 2656 - 240 - 50; ++cbst, ++j, j %= 12) {
-            //matrix decode the color difference signals;
-            eye[cbst] = i_filter[j] * chroma[cbst + 12];
-            queue[cbst] = q_filter[j] * chroma[cbst + 12]; //comment out for teal and orange filter
+        //matrix decode the color difference signals;
+        //the loops below are kept free of branches, table lookups and index
+        //math so the JIT turns them into SIMD code wherever the CPU has it
+        final float[] i_line = i_lines[offset], q_line = q_lines[offset];
+        for (int cbst = cbstphase[offset]; cbst < 2656 - 240 - 50; ++cbst) {
+            eye[cbst] = i_line[cbst] * chroma[cbst + 12];
+            queue[cbst] = q_line[cbst] * chroma[cbst + 12]; //comment out for teal and orange filter
         }
 
         lowpass_filter(eye, 0.06f);
         lowpass_filter(queue, 0.05f);
 
+        //the yiq to rgb matrix, done for each channel separately, then the
+        //clamping and gamma lookups that can't be vectorized
+        final int[] red = s.red, green = s.green, blue = s.blue;
+        final float r0 = iqm[0][0], r1 = iqm[0][1], r2 = iqm[0][2],
+                g0 = iqm[1][0], g1 = iqm[1][1], g2 = iqm[1][2],
+                b0 = iqm[2][0], b1 = iqm[2][1], b2 = iqm[2][2];
         for (int i = 0, x = 492 - 240; i < frame_w; ++i, ++x) {
-            line[i] = compose_col(
-                    ((luma[x] <= 0) ? 0 : colortbl[clamp((int) (iqm[0][0] * luma[x] + iqm[0][1] * eye[x] + iqm[0][2] * queue[x]))]),
-                    ((luma[x] <= 0) ? 0 : colortbl[clamp((int) (iqm[1][0] * luma[x] + iqm[1][1] * eye[x] + iqm[1][2] * queue[x]))]),
-                    ((luma[x] <= 0) ? 0 : colortbl[clamp((int) (iqm[2][0] * luma[x] + iqm[2][1] * eye[x] + iqm[2][2] * queue[x]))]));
+            red[i] = (int) (r0 * luma[x] + r1 * eye[x] + r2 * queue[x]);
+        }
+        for (int i = 0, x = 492 - 240; i < frame_w; ++i, ++x) {
+            green[i] = (int) (g0 * luma[x] + g1 * eye[x] + g2 * queue[x]);
+        }
+        for (int i = 0, x = 492 - 240; i < frame_w; ++i, ++x) {
+            blue[i] = (int) (b0 * luma[x] + b1 * eye[x] + b2 * queue[x]);
+        }
+        for (int i = 0, x = 492 - 240; i < frame_w; ++i, ++x) {
+            out[outoffset + i] = (luma[x] <= 0) ? compose_col(0, 0, 0)
+                    : compose_col(colortbl[clamp(red[i])], colortbl[clamp(green[i])], colortbl[clamp(blue[i])]);
         }
-        return line;
     }
 
     public static void box_filter(final float[] in, final float[] lpout, final float[] hpout, final int order) {
+        //the running sum has to go one sample at a time, the rest vectorizes
         float accum = 0;
         for (int i = 12; i < 2656 - 240; ++i) {
             accum += in[i] - in[i - order];
-            lpout[i] = accum / order;
+            lpout[i] = accum;
+        }
+        for (int i = 12; i < 2656 - 240; ++i) {
+            lpout[i] /= order;
             hpout[i] = in[i] - lpout[i];
         }
     }
@@ -212,60 +269,118 @@ public class NTSCRenderer extends Renderer {
         return (a != (a & 0xff)) ? ((a < 0) ? 0 : 255) : a;
     }
     public final static int frame_w = 704 * 3;
-    int[] frame = new int[frame_w * 240];
 //    Kernel kernel = new Kernel(3, 3,
 //            new float[]{-.0625f, .125f, -.0625f,
 //                .125f, .75f, .125f,
 //                -.0625f, .125f, -.0625f});
 //    BufferedImageOp op = new ConvolveOp(kernel);
 
+    //keys of the line last decoded for each line at each of the two dot crawl
+    //phases and the line versions they came from, and the key of what each
+    //of the images has in each line now
+    private final long[][] phasekeys = new long[2][240];
+    private final int[][] phaseversions = new int[2][240];
+    private final boolean[][] phasevalid = new boolean[2][240];
+    private final long[][] shownkeys = new long[imgs.length][240];
+    private final boolean[][] shownvalid = new boolean[imgs.length][240];
+    private final BufferedImage[] shownimgs = new BufferedImage[imgs.length];
+    private int[] versionsfrom;
+    //a bit over two frames' worth of lines, for both phases
+    private final LineCache cache = new LineCache(1024, frame_w);
+
     @Override
     public BufferedImage render(final int[] nespixels, final int[] bgcolors, final boolean dotcrawl) {
-        // multithreaded filter
-        lines.parallelStream().forEach(line -> cacheRender(nespixels, line, bgcolors, dotcrawl));
+        return render(nespixels, bgcolors, dotcrawl, null);
+    }
 
-        BufferedImage i = getBufferedImage(frame);
+    @Override
+    public BufferedImage render(final int[] nespixels, final int[] bgcolors, final boolean dotcrawl, final int[] lineversions) {
+        if (lineversions != versionsfrom) {
+            //versions from some other PPU, none of the saved keys are any good
+            versionsfrom = lineversions;
+            for (boolean[] valid : phasevalid) {
+                Arrays.fill(valid, false);
+            }
+        }
+        //lines are decoded straight into the image, and only the ones that
+        //aren't clipped off
+        final int index = nextImage();
+        final BufferedImage image = imgs[index];
+        if (shownimgs[index] != image) {
+            shownimgs[index] = image;
+            Arrays.fill(shownvalid[index], false);
+        }
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final int first = clip, last = clip + Math.min(height, image.getHeight());
+        final int phase = ((frames & 1) == 0 && dotcrawl) ? 0 : 1;
+        // multithreaded filter
+        lines.parallelStream().forEach(line -> {
+            if (line >= first && line < last) {
+                cacheRender(nespixels, line, bgcolors, phase, lineversions,
+                        pixels, (line - first) * frame_w, index);
+            }
+        });
         ++frames;
         //i = op.filter(i, null); //sharpen
-        return i;
+        return image;
+    }
+
+    /**
+     * Returns the cache of decoded lines, mostly to look at its hit rate.
+     */
+    public LineCache getLineCache() {
+        return cache;
     }
-    //ConcurrentHashMap cache = new ConcurrentHashMap<Long, int[]>(600);
-    Map<Long, int[]> cache = Collections.synchronizedMap(new WeakHashMap<Long, int[]>(600));
-    //weak hash map allows things in it to be garbage collected
 
-    private void cacheRender(final int[] nespixels, final int line, final int[] bgcolors, final boolean dotcrawl) {
+    private void cacheRender(final int[] nespixels, final int line, final int[] bgcolors, final int phase,
+            final int[] lineversions, final int[] pixels, final int row, final int index) {
 
-        //first of all, increment scanline numbers and get the offset for this line.
-        int offset = ((frames & 1) == 0 && dotcrawl) ? 0 : 6;
-        offset = (4 * line + offset) % 12; //3 line dot crawl
-        final int[] inpixels = new int[256];
-        System.arraycopy(nespixels, line << 8, inpixels, 0, 256);
-        final long crc = crc32(inpixels, offset, bgcolors[line]);
-//        //you'd think crc32 would have too many collisions but i haven't seen a one
-        int[] outpixels;
-        outpixels = (int[]) cache.get(crc);
-        if (outpixels == null) { //not in cache
+        final int offset = (4 * line + phase * 6) % 12; //3 line dot crawl
+        final long key;
+        if (lineversions != null && phasevalid[phase][line]
+                && phaseversions[phase][line] == lineversions[line]) {
+            //the PPU says the line is the same as when this phase was last
+            //decoded, so no need to even look at it
+            key = phasekeys[phase][line];
+        } else {
+            key = lineKey(nespixels, line << 8, offset, bgcolors[line]);
+            if (lineversions != null) {
+                phasekeys[phase][line] = key;
+                phaseversions[phase][line] = lineversions[line];
+                phasevalid[phase][line] = true;
+            }
+        }
+        if (shownvalid[index][line] && shownkeys[index][line] == key) {
+            //the image already has it from the last time it was used
+            return;
+        }
+        if (!cache.get(key, pixels, row)) {
             //could do with hints from the PPU here: if the entire screen is
             //scrolling horizontally, the cache will be useless.
-            outpixels = ntsc_decode(ntsc_encode(inpixels, offset, line, bgcolors[line]), offset);
-           cache.put(crc, outpixels);
+            final Scratch s = scratch.get();
+            encode(nespixels, line << 8, offset, bgcolors[line], s.sample);
+            decode(s.sample, offset, s, pixels, row);
+            cache.put(key, pixels, row);
         }
-
-        System.arraycopy(outpixels, 0, frame, line * frame_w, frame_w);
+        shownkeys[index][line] = key;
+        shownvalid[index][line] = true;
     }
 
-    public static long crc32(int[] array, int offset, int bgcolor) {
-        CRC32 c = new CRC32();
-        for (int i : array) {
-            c.update(i);
+    public static long lineKey(final int[] nespixels, final int start, final int offset, final int bgcolor) {
+        //64 bit FNV-1a over the whole pixel values (emphasis bits too), then
+        //scrambled so the low bits are good enough to pick a cache stripe.
+        //A collision would show the wrong line, but at 64 bits it won't happen.
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < start + 256; ++i) {
+            h = (h ^ nespixels[i]) * 0x100000001b3L;
         }
-        //it's not immediately obvious, but this ONLY sets the CRC based on the
-        //blue channel of the output. Still works well though.
-        //You get some interesting compressiony effects if you only take the CRC
-        //of every 20th pixel to see if your line is the same.
-        //especially in sidescrolling things.
-        c.update(offset);
-        c.update(bgcolor);
-        return c.getValue();
+        h = (h ^ offset) * 0x100000001b3L;
+        h = (h ^ bgcolor) * 0x100000001b3L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
     }
 }
@@ -15,6 +15,17 @@ public class NesColors {
     private final static double att = 0.7;
     public final static int[][] col = GetNESColors();
     public final static byte[][][] colbytes = NESColorsToBytes(col);
+    //col flattened out, indexed straight by a PPU pixel: emphasis bits 6-8,
+    //color number 0-5
+    public final static int[] lut = flatten(col);
+
+    private static int[] flatten(int[][] col) {
+        final int[] lut = new int[col.length * 64];
+        for (int emph = 0; emph < col.length; ++emph) {
+            System.arraycopy(col[emph], 0, lut, emph * 64, 64);
+        }
+        return lut;
+    }
 
     private static int[][] GetNESColors() {
         //just or's all the colors with opaque alpha and does the color emphasis calcs
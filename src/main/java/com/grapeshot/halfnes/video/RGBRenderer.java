@@ -7,6 +7,7 @@ package com.grapeshot.halfnes.video;
 import com.grapeshot.halfnes.video.NesColors;
 import com.grapeshot.halfnes.video.Renderer;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  *
@@ -14,6 +15,12 @@ import java.awt.image.BufferedImage;
  */
 public class RGBRenderer extends Renderer {
 
+    //the line versions each of the images was last converted from, and
+    //whose they were
+    private final int[][] converted = new int[imgs.length][240];
+    private final int[][] versionsfrom = new int[imgs.length][];
+    private final BufferedImage[] convertedimgs = new BufferedImage[imgs.length];
+
     public RGBRenderer() {
         frame_width = 256;
         init_images();
@@ -21,16 +28,43 @@ public class RGBRenderer extends Renderer {
 
     @Override
     public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl) {
-        //and now replace the nes color numbers with rgb colors (respecting color emph bits)
-        for (int i = 0; i < nespixels.length; ++i) {
-            nespixels[i] = NesColors.col[(nespixels[i] & 0x1c0) >> 6][nespixels[i] & 0x3f];
+        return render(nespixels, bgcolors, dotcrawl, null);
+    }
+
+    @Override
+    public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl, int[] lineversions) {
+        //converts straight into the next image, leaving out the clipped lines
+        //and the ones the image already has
+        final int index = nextImage();
+        final BufferedImage image = imgs[index];
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final boolean known = lineversions != null && lineversions == versionsfrom[index]
+                && image == convertedimgs[index];
+        versionsfrom[index] = lineversions;
+        convertedimgs[index] = image;
+        final int[] versions = converted[index];
+        final int last = clip + Math.min(height, image.getHeight());
+        for (int line = clip; line < last; ++line) {
+            if (known && versions[line] == lineversions[line]) {
+                continue;
+            }
+            if (lineversions != null) {
+                versions[line] = lineversions[line];
+            }
+            convert(nespixels, line << 8, pixels, (line - clip) << 8, 256);
         }
-        return getBufferedImage(nespixels);
+        return image;
     }
 
     public void renderData(int[] nespixels, int[] bgcolors, boolean dotcrawl) {
-        for (int i = 0; i < nespixels.length; ++i) {
-            nespixels[i] = NesColors.col[(nespixels[i] & 0x1c0) >> 6][nespixels[i] & 0x3f];
+        convert(nespixels, 0, nespixels, 0, nespixels.length);
+    }
+
+    private static void convert(int[] nespixels, int from, int[] rgb, int to, int length) {
+        //replace the nes color numbers with rgb colors (respecting color emph bits)
+        final int[] lut = NesColors.lut;
+        for (int i = 0; i < length; ++i) {
+            rgb[to + i] = lut[nespixels[from + i] & 0x1ff];
         }
     }
 }
@@ -22,25 +22,45 @@ public abstract class Renderer {
      */
     int clip = 8;
     int height = 240 - 2 * clip;
+    //how many image lines each NES line turns into
+    int frame_scale = 1;
     BufferedImage[] imgs = {null, null, null, null};
     int imgctr = 0;
 
     protected final void init_images() {
         for (int i = 0; i < imgs.length; ++i) {
-            imgs[i] = new BufferedImage(frame_width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            imgs[i] = new BufferedImage(frame_width, height * frame_scale, BufferedImage.TYPE_INT_ARGB_PRE);
         }
     }
 
     public abstract BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl);
 
+    /**
+     * Same as render, with the PPU's version number for each line so lines
+     * that haven't changed since they were last rendered can be skipped. The
+     * default renders everything.
+     */
+    public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl, int[] lineversions) {
+        return render(nespixels, bgcolors, dotcrawl);
+    }
+
     public void setClip(int i) {
         //how many lines to clip from top + bottom
         clip = i;
         height = 240 - 2 * clip;
+        if (imgs[0] != null && imgs[0].getHeight() != height * frame_scale) {
+            init_images();
+        }
+    }
+
+    protected final int nextImage() {
+        //the images are handed out round robin, so the last one given out
+        //isn't drawn over while it's still being shown
+        return ++imgctr % imgs.length;
     }
 
     public BufferedImage getBufferedImage(int[] frame) {
-        final BufferedImage image = imgs[++imgctr % imgs.length];
+        final BufferedImage image = imgs[nextImage()];
         final WritableRaster raster = image.getRaster();
         final int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
         System.arraycopy(frame, frame_width * clip, pixels, 0, frame_width * height);
@@ -0,0 +1,169 @@
+/*
+ * HalfNES by Andrew Hoffman
+ * Licensed under the GNU GPL Version 3. See LICENSE file
+ */
+package com.grapeshot.halfnes.video;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.stream.IntStream;
+
+/**
+ * Blows the picture up 2 or 3 times with the Scale2x / Scale3x pixel art
+ * rules, so big windows get sharp diagonals instead of blocks or blur. Edges
+ * are found by comparing the NES color numbers (with the emphasis bits), not
+ * the RGB colors they turn into, so two colors that only look alike still
+ * count as different.
+ *
+ * The frame is cut into bands of lines that run on the fork/join common pool.
+ * Each output line also depends on the NES lines above and below it, so a line
+ * is only left alone if none of the three changed.
+ */
+public class ScaleNxRenderer extends Renderer {
+
+    private final static int BAND = 16;
+    private final int scale;
+    //the line versions each of the images was last drawn from, and whose
+    //they were
+    private final int[][] drawn = new int[imgs.length][240];
+    private final int[][] versionsfrom = new int[imgs.length][];
+    private final BufferedImage[] drawnimgs = new BufferedImage[imgs.length];
+    private final boolean[] dirty = new boolean[240];
+
+    /**
+     * @param scale 2 or 3
+     */
+    public ScaleNxRenderer(int scale) {
+        if (scale != 2 && scale != 3) {
+            throw new IllegalArgumentException("Can only scale 2 or 3 times, not " + scale);
+        }
+        this.scale = scale;
+        frame_width = 256 * scale;
+        frame_scale = scale;
+        init_images();
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl) {
+        return render(nespixels, bgcolors, dotcrawl, null);
+    }
+
+    @Override
+    public BufferedImage render(int[] nespixels, int[] bgcolors, boolean dotcrawl, int[] lineversions) {
+        final int index = nextImage();
+        final BufferedImage image = imgs[index];
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final boolean known = lineversions != null && lineversions == versionsfrom[index]
+                && image == drawnimgs[index];
+        versionsfrom[index] = lineversions;
+        drawnimgs[index] = image;
+        final int[] versions = drawn[index];
+        final int first = clip, last = clip + Math.min(height, image.getHeight() / scale);
+        for (int line = first; line < last; ++line) {
+            dirty[line] = !known
+                    || versions[line] != lineversions[line]
+                    || versions[above(line)] != lineversions[above(line)]
+                    || versions[below(line)] != lineversions[below(line)];
+        }
+        if (lineversions != null) {
+            System.arraycopy(lineversions, 0, versions, 0, versions.length);
+        }
+        final int bands = (last - first + BAND - 1) / BAND;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            final int end = Math.min(last, first + (band + 1) * BAND);
+            for (int line = first + band * BAND; line < end; ++line) {
+                if (!dirty[line]) {
+                    continue;
+                }
+                if (scale == 2) {
+                    scale2x(nespixels, line, pixels, (line - first) * 2 * frame_width);
+                } else {
+                    scale3x(nespixels, line, pixels, (line - first) * 3 * frame_width);
+                }
+            }
+        });
+        return image;
+    }
+
+    private static int above(int line) {
+        return Math.max(line - 1, 0);
+    }
+
+    private static int below(int line) {
+        return Math.min(line + 1, 239);
+    }
+
+    private void scale2x(final int[] nespixels, final int line, final int[] out, final int row) {
+        //   B        E0 E1
+        // D E F  ->  E2 E3
+        //   H
+        final int[] lut = NesColors.lut;
+        final int up = above(line) << 8, mid = line << 8, down = below(line) << 8;
+        final int next = row + frame_width;
+        for (int x = 0; x < 256; ++x) {
+            final int l = Math.max(x - 1, 0), r = Math.min(x + 1, 255);
+            final int b = nespixels[up + x] & 0x1ff;
+            final int d = nespixels[mid + l] & 0x1ff;
+            final int e = nespixels[mid + x] & 0x1ff;
+            final int f = nespixels[mid + r] & 0x1ff;
+            final int h = nespixels[down + x] & 0x1ff;
+            final int o = 2 * x;
+            if (b != h && d != f) {
+                out[row + o] = lut[d == b ? d : e];
+                out[row + o + 1] = lut[b == f ? f : e];
+                out[next + o] = lut[d == h ? d : e];
+                out[next + o + 1] = lut[h == f ? f : e];
+            } else {
+                final int c = lut[e];
+                out[row + o] = c;
+                out[row + o + 1] = c;
+                out[next + o] = c;
+                out[next + o + 1] = c;
+            }
+        }
+    }
+
+    private void scale3x(final int[] nespixels, final int line, final int[] out, final int row) {
+        // A B C      E0 E1 E2
+        // D E F  ->  E3 E4 E5
+        // G H I      E6 E7 E8
+        final int[] lut = NesColors.lut;
+        final int up = above(line) << 8, mid = line << 8, down = below(line) << 8;
+        final int row1 = row + frame_width, row2 = row1 + frame_width;
+        for (int x = 0; x < 256; ++x) {
+            final int l = Math.max(x - 1, 0), r = Math.min(x + 1, 255);
+            final int a = nespixels[up + l] & 0x1ff;
+            final int b = nespixels[up + x] & 0x1ff;
+            final int c = nespixels[up + r] & 0x1ff;
+            final int d = nespixels[mid + l] & 0x1ff;
+            final int e = nespixels[mid + x] & 0x1ff;
+            final int f = nespixels[mid + r] & 0x1ff;
+            final int g = nespixels[down + l] & 0x1ff;
+            final int h = nespixels[down + x] & 0x1ff;
+            final int i = nespixels[down + r] & 0x1ff;
+            final int o = 3 * x;
+            final int center = lut[e];
+            if (b != h && d != f) {
+                out[row + o] = lut[d == b ? d : e];
+                out[row + o + 1] = lut[(d == b && e != c) || (b == f && e != a) ? b : e];
+                out[row + o + 2] = lut[b == f ? f : e];
+                out[row1 + o] = lut[(d == b && e != g) || (d == h && e != a) ? d : e];
+                out[row1 + o + 1] = center;
+                out[row1 + o + 2] = lut[(b == f && e != i) || (h == f && e != c) ? f : e];
+                out[row2 + o] = lut[d == h ? d : e];
+                out[row2 + o + 1] = lut[(d == h && e != i) || (h == f && e != g) ? h : e];
+                out[row2 + o + 2] = lut[h == f ? f : e];
+            } else {
+                for (int k = 0; k < 3; ++k) {
+                    out[row + o + k] = center;
+                    out[row1 + o + k] = center;
+                    out[row2 + o + k] = center;
+                }
+            }
+        }
+    }
+}
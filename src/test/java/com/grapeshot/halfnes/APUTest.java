@@ -0,0 +1,118 @@
+package com.grapeshot.halfnes;
+
+import com.grapeshot.halfnes.audio.AudioOutInterface;
+import com.grapeshot.halfnes.ui.ControllerInterface;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class APUTest {
+
+    @Test
+    public void filteredSquareToneIsSteady() throws IOException {
+        //a constant pulse 1 tone through the band limited path and both
+        //filters. Once the high pass has settled every frame has to swing
+        //just as far as the last, around 0.
+        final List<int[]> frames = new ArrayList<>();
+        final NES nes = new NES(new AudioOutInterface() {
+            private final int[] samples = new int[2000];
+            private int count = 0;
+
+            @Override
+            public void outputSample(int sample) {
+                samples[count++] = sample;
+            }
+
+            @Override
+            public void flushFrame(boolean waitIfBufferFull) {
+                frames.add(Arrays.copyOf(samples, count));
+                count = 0;
+            }
+
+            @Override
+            public void pause() {
+            }
+
+            @Override
+            public void resume() {
+            }
+
+            @Override
+            public void destroy() {
+            }
+
+            @Override
+            public boolean bufferHasLessThan(int samples) {
+                return false;
+            }
+        });
+        assertTrue(nes.getConfig().isSoundFiltering());
+        nes.loadROM(writeToneRom());
+        nes.setControllers(mock(ControllerInterface.class), mock(ControllerInterface.class));
+        for (int i = 0; i < 300; ++i) {
+            nes.frameAdvance();
+        }
+        //the first second is for the high pass to settle, after that the
+        //peaks can only move by a bit of rounding, and the level they're
+        //around can't wander off either
+        final int[] first = range(frames.get(60));
+        assertTrue(first[1] - first[0] > 7000);
+        final long[] sums = new long[2], counts = new long[2];
+        for (int i = 60; i < frames.size(); ++i) {
+            final int[] frame = frames.get(i);
+            assertTrue(frame.length == 733 || frame.length == 734);
+            final int[] range = range(frame);
+            assertTrue(Math.abs(range[0] - first[0]) <= 8);
+            assertTrue(Math.abs(range[1] - first[1]) <= 8);
+            final int half = i < 180 ? 0 : 1;
+            for (int sample : frame) {
+                sums[half] += sample;
+            }
+            counts[half] += frame.length;
+        }
+        final double mean = sums[0] / (double) counts[0], latermean = sums[1] / (double) counts[1];
+        assertTrue(Math.abs(mean) < 200);
+        assertTrue(Math.abs(latermean - mean) < 20);
+    }
+
+    private static int[] range(int[] samples) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int s : samples) {
+            min = Math.min(min, s);
+            max = Math.max(max, s);
+        }
+        return new int[]{min, max};
+    }
+
+    /**
+     * Writes out an NROM that starts the tone and then does nothing else.
+     */
+    private static String writeToneRom() throws IOException {
+        //pulse 1 on, 50% duty at constant volume 15, about 440 Hz
+        final String code = "a9 01 8d 15 40 a9 bf 8d 00 40 a9 00 8d 01 40"
+                + " a9 fd 8d 02 40 a9 00 8d 03 40 4c 19 c0";
+        final byte[] rom = new byte[16 + 0x4000 + 0x2000];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1a;
+        rom[4] = 1;
+        rom[5] = 1;
+        int pc = 16;
+        for (String b : code.split(" ")) {
+            rom[pc++] = (byte) Integer.parseInt(b, 16);
+        }
+        //every vector goes to the start, there are no interrupts anyway
+        for (int i = 16 + 0x3ffa; i < 16 + 0x4000; i += 2) {
+            rom[i + 1] = (byte) 0xc0;
+        }
+        Files.write(Paths.get("target/tone.nes"), rom);
+        return "target/tone.nes";
+    }
+}
@@ -0,0 +1,32 @@
+package com.grapeshot.halfnes;
+
+import com.grapeshot.halfnes.ui.ControllerInterface;
+import com.grapeshot.halfnes.ui.GUIInterface;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class CPURAMTest {
+
+    @Test
+    public void prgRamWritesLandInTheMapper() {
+        //NROM writes to 0x6000-0x7fff go through the write page table, they
+        //still have to end up in the mapper's PRG RAM, which is what gets saved
+        NES nes = new NES((GUIInterface) null);
+        nes.loadROM("src/test/resources/nestest/nestest.nes");
+        nes.setControllers(mock(ControllerInterface.class), mock(ControllerInterface.class));
+        final CPURAM ram = nes.getCPURAM();
+        ram.write(0x6000, 0x12);
+        ram.write(0x6123, 0x42);
+        ram.write(0x7fff, 0x99);
+        final byte[] prgram = ram.mapper.getPRGRam();
+        assertEquals(0x12, prgram[0] & 0xff);
+        assertEquals(0x42, prgram[0x123] & 0xff);
+        assertEquals(0x99, prgram[0x1fff] & 0xff);
+        assertEquals(0x42, ram.read(0x6123));
+        //and a page taken out of the table goes back through cartWrite
+        ram.unmapPage(0x61);
+        ram.write(0x6124, 0x43);
+        assertEquals(0x43, prgram[0x124] & 0xff);
+    }
+}
@@ -0,0 +1,118 @@
+package com.grapeshot.halfnes.audio;
+
+import java.util.Arrays;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlipBufferTest {
+
+    //NTSC CPU clock over 44.1 kHz, which doesn't come out even
+    private final static double NTSC = 1789773.0 / 44100;
+
+    @Test
+    public void stepSettlesToItsSize() {
+        //32 cycles a sample, so 32 cycles in a row land on every phase
+        for (int cycle = 1000; cycle < 1064; ++cycle) {
+            for (int delta : new int[]{1, 1000, -12345, 30000}) {
+                final BlipBuffer blip = new BlipBuffer(32, 4000);
+                final int[] out = new int[blip.maxSamples()];
+                blip.addDelta(cycle, delta);
+                assertEquals(125, blip.endFrame(4000, out));
+                //nothing before the impulse, exactly the step after it
+                for (int i = 0; i < 31; ++i) {
+                    assertEquals(0, out[i]);
+                }
+                for (int i = 34 + 16; i < 125; ++i) {
+                    assertEquals(delta, out[i]);
+                }
+                //and it stays there
+                assertEquals(125, blip.endFrame(4000, out));
+                for (int i = 0; i < 125; ++i) {
+                    assertEquals(delta, out[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tailCarriesIntoNextFrame() {
+        //the same changes once in one long frame and once in two short ones,
+        //with impulses that hang over the end of the first
+        final BlipBuffer whole = new BlipBuffer(32, 2000), split = new BlipBuffer(32, 2000);
+        final int[] deltas = {500, -2000, 7000, -300, 1234};
+        final int[] cycles = {10, 990, 999, 1005, 1500};
+        for (int i = 0; i < deltas.length; ++i) {
+            whole.addDelta(cycles[i], deltas[i]);
+            if (cycles[i] < 1000) {
+                split.addDelta(cycles[i], deltas[i]);
+            }
+        }
+        final int[] expected = new int[whole.maxSamples()];
+        final int count = whole.endFrame(2000, expected);
+        final int[] out = new int[split.maxSamples()], first = new int[split.maxSamples()];
+        final int firstcount = split.endFrame(1000, first);
+        for (int i = 0; i < deltas.length; ++i) {
+            if (cycles[i] >= 1000) {
+                split.addDelta(cycles[i] - 1000, deltas[i]);
+            }
+        }
+        final int secondcount = split.endFrame(1000, out);
+        assertEquals(count, firstcount + secondcount);
+        System.arraycopy(out, 0, out, firstcount, secondcount);
+        System.arraycopy(first, 0, out, 0, firstcount);
+        assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(out, count));
+    }
+
+    @Test
+    public void sampleCountCarriesFraction() {
+        //31.25 samples a frame, so 3 frames of 31 and then one of 32
+        final BlipBuffer blip = new BlipBuffer(32, 2000);
+        final int[] out = new int[blip.maxSamples()];
+        for (int frame = 0; frame < 100; ++frame) {
+            assertEquals(frame % 4 == 3 ? 32 : 31, blip.endFrame(1000, out));
+        }
+        //and with the real rates none of the fractions get lost either
+        final BlipBuffer ntsc = new BlipBuffer(NTSC, 29781 * 2);
+        final int[] ntscout = new int[ntsc.maxSamples()];
+        long total = 0;
+        for (int frame = 0; frame < 600; ++frame) {
+            final int count = ntsc.endFrame(29781, ntscout);
+            assertTrue(count == 733 || count == 734);
+            total += count;
+        }
+        assertTrue(Math.abs(total - 600 * 29781 / NTSC) < 1);
+    }
+
+    @Test
+    public void squareWaveHoldsItsLevels() {
+        //a square wave that switches every 4000 cycles, about 98 samples,
+        //over a lot of frames. Away from the edges every sample has to be
+        //exactly one of the two levels, any error in the impulses would add
+        //up and drift.
+        final BlipBuffer blip = new BlipBuffer(NTSC, 29781 * 2);
+        final int[] out = new int[blip.maxSamples()];
+        final int half = 4000, level = 10000;
+        long framestart = 0;
+        long sample = 0;
+        int checked = 0;
+        for (int frame = 0; frame < 300; ++frame) {
+            for (long edge = (framestart + half - 1) / half * half; edge < framestart + 29781; edge += half) {
+                blip.addDelta((int) (edge - framestart), (edge / half) % 2 == 0 ? level : -level);
+            }
+            final int count = blip.endFrame(29781, out);
+            for (int i = 0; i < count; ++i, ++sample) {
+                //where the sample is in cycles, less the delay
+                final double at = (sample - 8) * NTSC;
+                final double fromedge = Math.abs(at - Math.round(at / half) * (double) half);
+                if (at > 0 && fromedge > 20 * NTSC) {
+                    assertEquals(((long) (at / half)) % 2 == 0 ? level : 0, out[i]);
+                    ++checked;
+                }
+            }
+            framestart += 29781;
+        }
+        assertTrue(checked > sample / 2);
+    }
+}
@@ -0,0 +1,78 @@
+package com.grapeshot.halfnes.audio;
+
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SampleRingTest {
+
+    @Test(timeOut = 60000)
+    public void readerGetsEverySampleInOrder() throws InterruptedException {
+        //a small ring and odd sized chunks on both sides, so the counters
+        //wrap around the buffer thousands of times and at every offset
+        final SampleRing ring = new SampleRing(100);
+        final int total = 2000000;
+        final int[] received = {0}, wrong = {0};
+        final Thread reader = new Thread(() -> {
+            final short[] buf = new short[37];
+            short expect = 0;
+            while (received[0] < total) {
+                final int n = ring.read(buf, 0, buf.length);
+                for (int i = 0; i < n; ++i) {
+                    if (buf[i] != expect++) {
+                        ++wrong[0];
+                    }
+                }
+                received[0] += n;
+                //let the writer in between reads, left alone either side
+                //fills or empties the whole ring and the copies never split
+                Thread.yield();
+            }
+        }, "SampleRing reader");
+        reader.setDaemon(true);
+        reader.start();
+        final short[] chunk = new short[53];
+        short next = 0;
+        int sent = 0;
+        while (sent < total && reader.isAlive()) {
+            final int length = Math.min(chunk.length, total - sent);
+            for (int i = 0; i < length; ++i) {
+                chunk[i] = (short) (next + i);
+            }
+            final int n = ring.write(chunk, 0, length);
+            next += n;
+            sent += n;
+            if (n < length) {
+                Thread.yield();
+            }
+        }
+        reader.join();
+        //a gap or a sample read twice would throw the count off as well as
+        //the order
+        assertEquals(total, sent);
+        assertEquals(total, received[0]);
+        assertEquals(0, wrong[0]);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void writeStopsWhenFull() {
+        final SampleRing ring = new SampleRing(6);
+        assertEquals(8, ring.capacity());
+        final short[] samples = {1, 2, 3, 4, 5};
+        assertEquals(5, ring.write(samples, 0, 5));
+        //only room for 3 of these
+        assertEquals(3, ring.write(samples, 0, 5));
+        assertEquals(8, ring.size());
+        assertEquals(0, ring.write(samples, 0, 5));
+        final short[] out = new short[4];
+        assertEquals(4, ring.read(out, 0, 4));
+        assertArrayEquals(new short[]{1, 2, 3, 4}, out);
+        //the room that read made, across the end of the buffer
+        assertEquals(4, ring.write(samples, 1, 4));
+        final short[] rest = new short[10];
+        assertEquals(8, ring.read(rest, 0, 10));
+        assertArrayEquals(new short[]{5, 1, 2, 3, 2, 3, 4, 5, 0, 0}, rest);
+        assertEquals(0, ring.read(rest, 0, 10));
+    }
+}
@@ -4,9 +4,31 @@ import com.grapeshot.halfnes.NES;
 import com.grapeshot.halfnes.mappers.BadMapperException;
 import com.grapeshot.halfnes.ui.ControllerInterface;
 import com.grapeshot.halfnes.ui.GUIInterface;
+import com.grapeshot.halfnes.ui.HeadlessFarm;
+import com.grapeshot.halfnes.ui.PuppetController;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import org.testng.annotations.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -14,6 +36,8 @@ import static org.mockito.Mockito.mock;
  */
 public class NesTest {
 
+    private final static String NESTEST = "src/test/resources/nestest/nestest.nes";
+
     @Test
     public void nesTest() throws BadMapperException {
         NES nes = new NES((GUIInterface) null);
@@ -42,4 +66,227 @@ public class NesTest {
         assertEquals(nes.getCPURAM().read(3), 255);
     }
 
+    @Test
+    public void tableDispatchMatchesSwitch() throws BadMapperException, IOException {
+        //both cpu cores have to produce exactly the same trace, cycle counts included
+        runNesTest(false, "target/nestest-switch.log");
+        runNesTest(true, "target/nestest-table.log");
+        assertEquals(Files.readAllLines(Paths.get("target/nestest-switch.log")),
+                Files.readAllLines(Paths.get("target/nestest-table.log")));
+    }
+
+    private static void runNesTest(boolean tableDispatch, String log) throws BadMapperException {
+        NES nes = new NES((GUIInterface) null);
+        nes.loadROM("src/test/resources/nestest/nestest.nes", 0xC000);
+        nes.setControllers(mock(ControllerInterface.class), mock(ControllerInterface.class));
+        nes.getCPU().setTableDispatch(tableDispatch);
+        nes.getCPU().startLog(log);
+        while (nes.runEmulation) {
+            nes.frameAdvance();
+        }
+        nes.getCPU().stopLog();
+    }
+
+    @Test
+    public void catchUpMatchesLockstep() throws BadMapperException {
+        //runs the nestest menu, with rendering and NMIs on, and then all of the
+        //tests from it, and checks both schedulers end every frame the same way
+        assertEquals(runMenu(NESTEST, false, 300, 1, 1), runMenu(NESTEST, true, 300, 1, 1));
+    }
+
+    @Test
+    public void skippedFramesRunLikeDrawnOnes() throws IOException {
+        //frames that aren't drawn take the PPU's no-draw path, sprite 0 hits
+        //included, which must not change anything the game can see. Every
+        //4th frame is drawn in both runs and has to come out the same.
+        assertEquals(runMenu(NESTEST, true, 300, 1, 4), runMenu(NESTEST, true, 300, 4, 4));
+        assertEquals(runMenu(NESTEST, false, 300, 1, 4), runMenu(NESTEST, false, 300, 4, 4));
+        //nestest never looks at sprite 0, this one does nothing else
+        final String rom = writeSprite0Rom();
+        assertEquals(runMenu(rom, true, 300, 1, 4), runMenu(rom, true, 300, 4, 4));
+        assertEquals(runMenu(rom, false, 300, 1, 4), runMenu(rom, false, 300, 4, 4));
+    }
+
+    /**
+     * Writes out a small NROM that times sprite 0 hits. Every frame it moves
+     * sprite 0, one opaque line high, down and right over a solid background,
+     * then counts how long the hit takes while only looking at $2002 every
+     * couple of scanlines, so the PPU gets to catch up whole lines at a time.
+     * The count for each frame goes to $0300 + the frame number.
+     */
+    private static String writeSprite0Rom() throws IOException {
+        final String[] code = {
+            //reset: wait for the PPU to warm up
+            "78 d8 a2 ff 9a a9 00 8d 00 20 8d 01 20",
+            "2c 02 20 10 fb 2c 02 20 10 fb",
+            //fill the first nametable with tile 1
+            "a9 20 8d 06 20 a9 00 8d 06 20 a0 04 a2 00 a9 01",
+            "8d 07 20 e8 d0 fa 88 d0 f7",
+            //NMIs and rendering on, then idle
+            "a9 80 8d 00 20 a9 1e 8d 01 20 4c 3a c0",
+            //nmi ($c03d): sprite 0 at y = frame + 16, x = frame, tile 2
+            "a9 00 8d 03 20 a5 10 29 7f 18 69 10 8d 04 20",
+            "a9 02 8d 04 20 a9 00 8d 04 20 a5 10 29 7f 8d 04 20",
+            //OAM address back to 0, no scroll
+            "a9 00 8d 03 20 8d 05 20 8d 05 20 a9 80 8d 00 20",
+            //wait for last frame's hit to clear
+            "2c 02 20 70 fb",
+            //count in y, with a 225 cycle wait between looks at the hit flag
+            "a0 00 a2 2d ca d0 fd c8 2c 02 20 50 f5",
+            //store the count, next frame
+            "98 a6 10 9d 00 03 e6 10 40"};
+        final byte[] rom = new byte[16 + 0x4000 + 0x2000];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1a;
+        rom[4] = 1;
+        rom[5] = 1;
+        int pc = 16;
+        for (String line : code) {
+            for (String b : line.split(" ")) {
+                rom[pc++] = (byte) Integer.parseInt(b, 16);
+            }
+        }
+        //vectors: nmi, reset, irq
+        final int vectors = 16 + 0x3ffa;
+        final int[] vectorbytes = {0x3d, 0xc0, 0x00, 0xc0, 0x00, 0xc0};
+        for (int i = 0; i < vectorbytes.length; ++i) {
+            rom[vectors + i] = (byte) vectorbytes[i];
+        }
+        //tile 1 is solid, tile 2 only has its top line
+        final int chr = 16 + 0x4000;
+        Arrays.fill(rom, chr + 16, chr + 24, (byte) 0xff);
+        rom[chr + 32] = (byte) 0xff;
+        Files.write(Paths.get("target/sprite0.nes"), rom);
+        return "target/sprite0.nes";
+    }
+
+    @Test
+    public void farmInstancesRunIndependently() {
+        //two instances get the same input and have to stay identical, the
+        //third never starts the tests so it has to end up somewhere else
+        try (HeadlessFarm farm = new HeadlessFarm("src/test/resources/nestest/nestest.nes", 3)) {
+            farm.step(new int[]{0, 0, 0}, 60);
+            farm.step(new int[]{0, 8, 8}, 10);
+            farm.step(new int[]{0, 0, 0}, 60);
+            assertArrayEquals(farm.getFrame(1), farm.getFrame(2));
+            assertArrayEquals(farm.getRam(1), farm.getRam(2));
+            assertFalse(Arrays.equals(farm.getRam(0), farm.getRam(1)));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void farmRejectsStepAfterClose() {
+        final HeadlessFarm farm = new HeadlessFarm("src/test/resources/nestest/nestest.nes", 2);
+        farm.step(null, 1);
+        farm.close();
+        farm.step(null, 1);
+    }
+
+    @Test
+    public void farmRecoversFromRejectedInstances() {
+        //an executor that takes the first instance and turns down the second,
+        //once. The failed step has to wait for the first instance, and the
+        //next step has to wait for both again.
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        final AtomicInteger accepted = new AtomicInteger();
+        final boolean[] reject = {true};
+        final ExecutorService picky = new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0] && accepted.get() >= 1) {
+                    reject[0] = false;
+                    throw new RejectedExecutionException("full");
+                }
+                if (accepted.incrementAndGet() % 2 == 1 || reject[0]) {
+                    pool.execute(command);
+                } else {
+                    //holds the second instance back, so a step that returns
+                    //as soon as the first one is done gets caught out
+                    pool.execute(() -> {
+                        LockSupport.parkNanos(300000000);
+                        command.run();
+                    });
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                pool.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return pool.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return pool.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return pool.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return pool.awaitTermination(timeout, unit);
+            }
+        };
+        try (HeadlessFarm farm = new HeadlessFarm("src/test/resources/nestest/nestest.nes", 2, picky)) {
+            try {
+                farm.step(null, 30);
+                fail("expected the step to be rejected");
+            } catch (RejectedExecutionException e) {
+                //expected
+            }
+            //instance 1 catches up on the 30 frames it missed
+            for (int i = 0; i < 30; ++i) {
+                farm.getNes(1).frameAdvance();
+            }
+            farm.step(null, 20);
+            assertArrayEquals(farm.getRam(0), farm.getRam(1));
+            assertArrayEquals(farm.getFrame(0), farm.getFrame(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Runs a ROM, pressing start at frame 60 so nestest runs the tests from its
+     * menu, and returns the RAM and PC at the end of each frame, with the
+     * picture added in every checkEvery frames. Only every drawEvery frames is
+     * drawn.
+     */
+    private static List<Integer> runMenu(String rom, boolean catchUp, int frames, int drawEvery, int checkEvery) {
+        final int[][] frame = new int[1][];
+        GUIInterface gui = mock(GUIInterface.class);
+        doAnswer(i -> frame[0] = ((int[]) i.getArguments()[0]).clone())
+                .when(gui).setFrame(any(), any(), anyBoolean());
+        NES nes = new NES(gui);
+        nes.loadROM(rom);
+        PuppetController pad = new PuppetController();
+        nes.setControllers(pad, mock(ControllerInterface.class));
+        nes.getPpu().setCatchUp(catchUp);
+        List<Integer> states = new ArrayList<>();
+        for (int i = 0; i < frames; ++i) {
+            if (i == 60) {
+                pad.pressButton(PuppetController.Button.START);
+            } else if (i == 70) {
+                pad.resetButtons();
+            }
+            nes.getPpu().setDrawing(i % drawEvery == 0);
+            nes.frameAdvance();
+            states.add((i % checkEvery == 0 ? Arrays.hashCode(frame[0]) * 31 : 0)
+                    + Arrays.hashCode(nes.getCPURAM().getWram()) * 17
+                    + nes.getCPU().getPC());
+        }
+        assertNotNull(frame[0]);
+        return states;
+    }
+
 }
@@ -0,0 +1,122 @@
+package com.grapeshot.halfnes.ui;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameExchangeTest {
+
+    //only the start of each frame is filled in, or the test would mostly be
+    //copying pixels
+    private final static int FILLED = 512;
+
+    @Test(timeOut = 60000)
+    public void takerSeesOnlyNewerWholeFrames() throws InterruptedException {
+        //numbered frames, with every filled pixel set to the number. The
+        //taker has to get them in order, each one complete and not touched
+        //again while it has it, and it has to be woken for the last one.
+        final FrameExchange exchange = new FrameExchange();
+        final int total = 100000;
+        final int[] taken = {0};
+        final AtomicReference<String> problem = new AtomicReference<>();
+        final Thread taker = new Thread(() -> {
+            int last = 0;
+            try {
+                while (last < total) {
+                    final FrameExchange.Frame f = exchange.take();
+                    final int number = f.pixels[0];
+                    if (number <= last) {
+                        problem.set("frame " + number + " after " + last);
+                        return;
+                    }
+                    //look at it twice with a chance for the publisher to run
+                    //in between, it mustn't be filling this one
+                    for (int pass = 0; pass < 2; ++pass) {
+                        for (int i = 0; i < FILLED; ++i) {
+                            if (f.pixels[i] != number) {
+                                problem.set("frame " + number + " has " + f.pixels[i] + " at " + i);
+                                return;
+                            }
+                        }
+                        Thread.yield();
+                    }
+                    last = number;
+                    ++taken[0];
+                }
+            } catch (InterruptedException e) {
+                problem.set("interrupted");
+            }
+        }, "FrameExchange taker");
+        taker.setDaemon(true);
+        taker.start();
+        for (int number = 1; number <= total; ++number) {
+            final FrameExchange.Frame f = exchange.filling();
+            for (int i = 0; i < FILLED; ++i) {
+                f.pixels[i] = number;
+            }
+            exchange.publish();
+            if (number % 3 == 0) {
+                //so the taker also gets frames one at a time, not only ever
+                //the newest of a bunch
+                Thread.yield();
+            }
+        }
+        taker.join();
+        if (problem.get() != null) {
+            fail(problem.get());
+        }
+        assertTrue(taken[0] > 0);
+    }
+
+    @Test(timeOut = 10000)
+    public void takeWaitsForAFrame() throws InterruptedException {
+        final FrameExchange exchange = new FrameExchange();
+        final int[] got = {0};
+        final Thread taker = new Thread(() -> {
+            try {
+                got[0] = exchange.take().pixels[0];
+            } catch (InterruptedException e) {
+                got[0] = -1;
+            }
+        });
+        taker.setDaemon(true);
+        taker.start();
+        //nothing published, so it has to be parked
+        Thread.sleep(100);
+        assertTrue(taker.isAlive());
+        exchange.filling().pixels[0] = 7;
+        exchange.publish();
+        taker.join();
+        assertEquals(7, got[0]);
+    }
+
+    @Test(timeOut = 10000)
+    public void interruptStopsTheTaker() throws InterruptedException {
+        final FrameExchange exchange = new FrameExchange();
+        final boolean[] stopped = {false};
+        final Thread taker = new Thread(() -> {
+            try {
+                exchange.take();
+            } catch (InterruptedException e) {
+                stopped[0] = true;
+            }
+        });
+        taker.setDaemon(true);
+        taker.start();
+        Thread.sleep(100);
+        taker.interrupt();
+        taker.join();
+        assertTrue(stopped[0]);
+        //and with a frame waiting too
+        exchange.publish();
+        Thread.currentThread().interrupt();
+        try {
+            exchange.take();
+            fail("took a frame while interrupted");
+        } catch (InterruptedException e) {
+            //right
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.grapeshot.halfnes.video;
+
+/**
+ * Times the table driven AltNTSCRenderer against the direct port it replaced.
+ * Not part of the test suite, run it by hand with the test classpath.
+ */
+public class AltNTSCBenchmark {
+
+    public static void main(String[] args) {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        final int[][] frames = {AltNTSCRendererTest.menuFrame(), AltNTSCRendererTest.colorsFrame()};
+        final AltNTSCRenderer tables = new AltNTSCRenderer(), direct = new AltNTSCRenderer(false);
+        //the first round only warms up the JIT
+        for (int warmup = 1; warmup >= 0; --warmup) {
+            long tabletime = 0, directtime = 0;
+            for (int i = 0; i < rounds; ++i) {
+                final int[] frame = frames[i % frames.length];
+                long t = System.nanoTime();
+                tables.render(frame, null, true);
+                tabletime += System.nanoTime() - t;
+                t = System.nanoTime();
+                direct.render(frame, null, true);
+                directtime += System.nanoTime() - t;
+            }
+            if (warmup == 0) {
+                System.out.println("AltNTSCRenderer, " + rounds + " frames: tables "
+                        + tabletime / 1000000 + " ms, direct " + directtime / 1000000 + " ms");
+            }
+        }
+    }
+}
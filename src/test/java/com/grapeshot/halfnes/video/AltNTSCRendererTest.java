@@ -0,0 +1,63 @@
+package com.grapeshot.halfnes.video;
+
+import com.grapeshot.halfnes.NES;
+import com.grapeshot.halfnes.ui.ControllerInterface;
+import com.grapeshot.halfnes.ui.GUIInterface;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class AltNTSCRendererTest {
+
+    @Test
+    public void tablesMatchDirectPort() {
+        //the table driven composite decoder against the Math calls it replaced,
+        //on a real frame and on every color and emphasis combination. Each is
+        //rendered twice, since the dot crawl phase changes every frame.
+        final AltNTSCRenderer tables = new AltNTSCRenderer(), direct = new AltNTSCRenderer(false);
+        final int[] menu = menuFrame(), colors = colorsFrame();
+        for (int[] frame : new int[][]{menu, menu, colors, colors}) {
+            assertArrayEquals(pixels(direct.render(frame, null, true)),
+                    pixels(tables.render(frame, null, true)));
+        }
+    }
+
+    /**
+     * The nestest menu, 30 frames in.
+     */
+    static int[] menuFrame() {
+        final int[] menu = new int[240 * 256];
+        GUIInterface gui = mock(GUIInterface.class);
+        doAnswer(i -> {
+            System.arraycopy((int[]) i.getArguments()[0], 0, menu, 0, menu.length);
+            return null;
+        }).when(gui).setFrame(any(), any(), anyBoolean());
+        NES nes = new NES(gui);
+        nes.loadROM("src/test/resources/nestest/nestest.nes");
+        nes.setControllers(mock(ControllerInterface.class), mock(ControllerInterface.class));
+        for (int i = 0; i < 30; ++i) {
+            nes.frameAdvance();
+        }
+        return menu;
+    }
+
+    /**
+     * Every color with every emphasis, in runs of 7 pixels.
+     */
+    static int[] colorsFrame() {
+        final int[] colors = new int[240 * 256];
+        for (int i = 0; i < colors.length; ++i) {
+            colors[i] = (i / 7) & 0x1ff;
+        }
+        return colors;
+    }
+
+    static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,202 @@
+package com.grapeshot.halfnes.video;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineCacheTest {
+
+    //keys below 1 << 17 go to stripe key & 15, so these all share stripe 0
+    private final static long A = 0, B = 16, C = 32, D = 48, E = 64, F = 80;
+
+    private static int[] line(long key) {
+        final int[] line = new int[4];
+        for (int i = 0; i < line.length; ++i) {
+            line[i] = (int) key * 10 + i;
+        }
+        return line;
+    }
+
+    private static void put(LineCache cache, long key) {
+        cache.put(key, line(key), 0);
+    }
+
+    private static boolean has(LineCache cache, long key) {
+        final int[] dest = new int[4];
+        if (!cache.get(key, dest, 0)) {
+            return false;
+        }
+        assertArrayEquals(line(key), dest);
+        return true;
+    }
+
+    @Test
+    public void getReturnsCopyOfWhatWasPut() {
+        final LineCache cache = new LineCache(64, 4);
+        final int[] src = {9, 9, 1, 2, 3, 4, 9};
+        cache.put(7, src, 2);
+        //changing the source afterwards doesn't change the cached line
+        src[2] = 100;
+        final int[] dest = {5, 5, 5, 5, 5, 5};
+        assertTrue(cache.get(7, dest, 1));
+        assertArrayEquals(new int[]{5, 1, 2, 3, 4, 5}, dest);
+        //a miss leaves dest alone
+        assertFalse(cache.get(8, dest, 0));
+        assertArrayEquals(new int[]{5, 1, 2, 3, 4, 5}, dest);
+        //putting the same key again replaces the line in its slot
+        cache.put(7, new int[]{4, 3, 2, 1}, 0);
+        assertTrue(cache.get(7, dest, 0));
+        assertArrayEquals(new int[]{4, 3, 2, 1, 4, 5}, dest);
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void capacityRoundsUpToStripes() {
+        assertEquals(16, new LineCache(1, 4).capacity());
+        assertEquals(32, new LineCache(20, 4).capacity());
+        assertEquals(64, new LineCache(64, 4).capacity());
+    }
+
+    @Test
+    public void clockSparesReferencedLines() {
+        //4 slots a stripe
+        final LineCache cache = new LineCache(64, 4);
+        put(cache, A);
+        put(cache, B);
+        put(cache, C);
+        put(cache, D);
+        put(cache, 1);
+        assertTrue(has(cache, A));
+        assertTrue(has(cache, C));
+        //the hand clears A and takes B
+        put(cache, E);
+        assertEquals(1, cache.getEvictions());
+        //then clears C and takes D
+        put(cache, F);
+        assertEquals(2, cache.getEvictions());
+        assertFalse(has(cache, B));
+        assertFalse(has(cache, D));
+        assertTrue(has(cache, A));
+        assertTrue(has(cache, C));
+        assertTrue(has(cache, E));
+        assertTrue(has(cache, F));
+        //other stripes are left alone
+        assertTrue(has(cache, 1));
+        assertEquals(5, cache.size());
+        //all 4 are marked now, so the hand clears them all the way around
+        //and takes the one it started at, A
+        put(cache, 96);
+        assertFalse(has(cache, A));
+        //then skips over E, which was just hit again, and takes C
+        assertTrue(has(cache, E));
+        put(cache, 112);
+        assertFalse(has(cache, C));
+        assertTrue(has(cache, E));
+        assertTrue(has(cache, F));
+        assertEquals(4, cache.getEvictions());
+    }
+
+    @Test
+    public void highBitsPickTheStripeToo() {
+        //keys that only differ above bit 32 still spread over every stripe,
+        //so one line each fits without anything being evicted
+        final LineCache cache = new LineCache(16, 4);
+        for (long i = 0; i < 16; ++i) {
+            put(cache, i << 32);
+        }
+        assertEquals(16, cache.size());
+        assertEquals(0, cache.getEvictions());
+        for (long i = 0; i < 16; ++i) {
+            assertTrue(has(cache, i << 32));
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void everyLineStaysFindableThroughEvictions() {
+        //64 slots a stripe like the renderer's, and keys in a scattered order
+        //so evicted keys get taken out of the middle of probe runs
+        final LineCache cache = new LineCache(1024, 4);
+        final List<Long> added = new ArrayList<>();
+        for (int i = 0; i < 20000; ++i) {
+            final long key = (i * 7919L) % 20011 + ((long) (i & 3) << 40);
+            put(cache, key);
+            added.add(key);
+            assertTrue(has(cache, key));
+        }
+        assertEquals(1024, cache.size());
+        //every stripe is full, so exactly as many lines as slots are left,
+        //and each one is found with its own contents
+        int found = 0;
+        for (long key : added) {
+            if (has(cache, key)) {
+                ++found;
+            }
+        }
+        assertEquals(1024, found);
+        cache.clear();
+        for (long key : added) {
+            assertFalse(has(cache, key));
+        }
+    }
+
+    @Test
+    public void clearKeepsCounters() {
+        final LineCache cache = new LineCache(64, 4);
+        put(cache, A);
+        assertTrue(has(cache, A));
+        assertFalse(has(cache, B));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(has(cache, A));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        //and fills up again from the start
+        put(cache, B);
+        assertTrue(has(cache, B));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void linesStayWholeAcrossThreads() throws InterruptedException {
+        //a cache much smaller than the keys in use, so lines get evicted and
+        //replaced all the time while other threads copy them out
+        final LineCache cache = new LineCache(32, 4);
+        final AtomicInteger wrong = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                final int[] dest = new int[4];
+                for (int i = 0; i < 200000; ++i) {
+                    final long key = (i * 31L + seed * 7) % 200;
+                    if (cache.get(key, dest, 0)) {
+                        for (int k = 0; k < dest.length; ++k) {
+                            if (dest[k] != (int) key * 10 + k) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    } else {
+                        put(cache, key);
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, wrong.get());
+        assertEquals(4 * 200000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getEvictions() > 0);
+    }
+}
@@ -0,0 +1,34 @@
+package com.grapeshot.halfnes.video;
+
+import java.util.Arrays;
+import org.testng.annotations.Test;
+import static com.grapeshot.halfnes.video.AltNTSCRendererTest.colorsFrame;
+import static com.grapeshot.halfnes.video.AltNTSCRendererTest.menuFrame;
+import static com.grapeshot.halfnes.video.AltNTSCRendererTest.pixels;
+import static org.junit.Assert.assertEquals;
+
+public class NTSCRendererTest {
+
+    @Test
+    public void matchesBaselineRenderer() {
+        //hashes of what the renderer made before its decode loops were split
+        //up for SIMD, one for each frame in this order, since the dot crawl
+        //phase changes every frame. Any change to the output has to be
+        //on purpose.
+        final int[] menu = menuFrame(), colors = colorsFrame();
+        //if this one's off it's the emulation that changed, not the renderer
+        assertEquals(682369133, Arrays.hashCode(menu));
+        final int[] menubg = new int[240], colorsbg = new int[240];
+        Arrays.fill(menubg, 0x0f);
+        for (int i = 0; i < colorsbg.length; ++i) {
+            colorsbg[i] = (i * 3) & 0x1ff;
+        }
+        final NTSCRenderer ntsc = new NTSCRenderer();
+        assertEquals(1820816014, Arrays.hashCode(pixels(ntsc.render(menu, menubg, true))));
+        assertEquals(2144520581, Arrays.hashCode(pixels(ntsc.render(menu, menubg, true))));
+        assertEquals(-1835754126, Arrays.hashCode(pixels(ntsc.render(colors, colorsbg, true))));
+        assertEquals(1082826484, Arrays.hashCode(pixels(ntsc.render(colors, colorsbg, true))));
+        //the lines are all cached now, and have to come back the same
+        assertEquals(2144520581, Arrays.hashCode(pixels(ntsc.render(menu, menubg, false))));
+    }
+}
@@ -0,0 +1,128 @@
+package com.grapeshot.halfnes.video;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import org.testng.annotations.Test;
+import static com.grapeshot.halfnes.video.AltNTSCRendererTest.pixels;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class ScaleNxRendererTest {
+
+    private final static int BLACK = 0x0f, WHITE = 0x30;
+    private final static int[] NOBG = new int[240];
+
+    /**
+     * Color of the sub pixel at kx, ky of the nes pixel at x, line.
+     */
+    private static int at(int[] pixels, int scale, int x, int line, int kx, int ky) {
+        return pixels[((line - 8) * scale + ky) * 256 * scale + x * scale + kx];
+    }
+
+    private static void assertBlock(int[] pixels, int scale, int x, int line, int... colors) {
+        for (int k = 0; k < scale * scale; ++k) {
+            assertEquals("x " + x + " line " + line + " sub pixel " + k,
+                    NesColors.lut[colors[k]], at(pixels, scale, x, line, k % scale, k / scale));
+        }
+    }
+
+    private static void assertRepeats(int[] nespixels, int scale) {
+        final int[] pixels = pixels(new ScaleNxRenderer(scale).render(nespixels, NOBG, false));
+        for (int line = 8; line < 232; ++line) {
+            for (int x = 0; x < 256; ++x) {
+                final int[] block = new int[scale * scale];
+                Arrays.fill(block, nespixels[line * 256 + x]);
+                assertBlock(pixels, scale, x, line, block);
+            }
+        }
+    }
+
+    @Test
+    public void diagonalEdgeGetsRounded() {
+        //black above and left of a 45 degree line, white below and right of
+        //it. The steps along the line get the corner facing the other color
+        //filled in, and that's all that changes.
+        final int[] frame = new int[240 * 256];
+        for (int i = 0; i < frame.length; ++i) {
+            frame[i] = (i & 255) + (i >> 8) < 250 ? BLACK : WHITE;
+        }
+        final int B = BLACK, W = WHITE;
+        final int[] twice = pixels(new ScaleNxRenderer(2).render(frame, NOBG, false));
+        final int[] thrice = pixels(new ScaleNxRenderer(3).render(frame, NOBG, false));
+        for (int line = 8; line < 232; ++line) {
+            for (int x = 0; x < 256; ++x) {
+                final int c = frame[line * 256 + x];
+                if (x + line == 250) {
+                    assertBlock(twice, 2, x, line, B, W, W, W);
+                    assertBlock(thrice, 3, x, line, B, W, W, W, W, W, W, W, W);
+                } else if (x + line == 249) {
+                    assertBlock(twice, 2, x, line, B, B, B, W);
+                    assertBlock(thrice, 3, x, line, B, B, B, B, B, B, B, B, W);
+                } else {
+                    assertBlock(twice, 2, x, line, c, c, c, c);
+                    assertBlock(thrice, 3, x, line, c, c, c, c, c, c, c, c, c);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void flatAreasAreRepeated() {
+        //stripes only ever have an edge one way, which isn't enough for
+        //either rule, so every pixel just gets blown up. The colors include
+        //emphasis bits.
+        final int[] across = new int[240 * 256], down = new int[240 * 256];
+        for (int i = 0; i < across.length; ++i) {
+            across[i] = ((i >> 8) * 7) & 0x1ff;
+            down[i] = ((i & 255) * 13) & 0x1ff;
+        }
+        for (int scale = 2; scale <= 3; ++scale) {
+            assertRepeats(across, scale);
+            assertRepeats(down, scale);
+        }
+    }
+
+    @Test
+    public void changedLineIsRedrawnInEveryImage() {
+        //draw all 4 images black, then make the whole frame white but only
+        //say line 100 changed. Each image has to redraw 99 to 101 the next
+        //time it comes around, since those are the output lines that look
+        //at line 100, and nothing else.
+        final ScaleNxRenderer scalenx = new ScaleNxRenderer(2);
+        final int[] versions = new int[240];
+        final int[] frame = new int[240 * 256];
+        Arrays.fill(frame, BLACK);
+        final BufferedImage[] images = new BufferedImage[4];
+        for (int i = 0; i < 4; ++i) {
+            images[i] = scalenx.render(frame, NOBG, false, versions);
+            for (int j = 0; j < i; ++j) {
+                assertNotSame(images[j], images[i]);
+            }
+        }
+        Arrays.fill(frame, WHITE);
+        ++versions[100];
+        //the second time around nothing changed, so each image stays as it was
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int i = 0; i < 4; ++i) {
+                final int[] pixels = pixels(scalenx.render(frame, NOBG, false, versions));
+                for (int line = 8; line < 232; ++line) {
+                    final int c = line >= 99 && line <= 101 ? WHITE : BLACK;
+                    for (int x = 0; x < 256; ++x) {
+                        assertBlock(pixels, 2, x, line, c, c, c, c);
+                    }
+                }
+            }
+        }
+        //versions from somewhere else don't say anything about what's in the
+        //images, even when the numbers match, so it all gets drawn
+        final int[] others = versions.clone();
+        for (int i = 0; i < 4; ++i) {
+            final int[] pixels = pixels(scalenx.render(frame, NOBG, false, others));
+            for (int line = 8; line < 232; ++line) {
+                for (int x = 0; x < 256; ++x) {
+                    assertBlock(pixels, 2, x, line, WHITE, WHITE, WHITE, WHITE);
+                }
+            }
+        }
+    }
+}